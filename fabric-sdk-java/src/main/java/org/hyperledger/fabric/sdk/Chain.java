@@ -14,12 +14,23 @@
 
 package org.hyperledger.fabric.sdk;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -36,7 +47,11 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import io.grpc.StatusRuntimeException;
@@ -143,7 +158,14 @@ public class Chain {
     private int transactionWaitTime = 5;
 
     // contains the anchor peers parsed from the channel's configBlock
-    private Set<Anchor> anchorPeers;
+    private volatile Set<Anchor> anchorPeers;
+
+    // the config block msps and anchorPeers were parsed from
+    private volatile Block configBlock;
+
+    // Marks a config snapshot file and its layout version.
+    private static final int CONFIG_SNAPSHOT_MAGIC = 0x43464753;
+    private static final int CONFIG_SNAPSHOT_VERSION = 1;
 
     // The crypto primitives object
     private CryptoSuite cryptoSuite;
@@ -574,6 +596,22 @@ public class Chain {
      */
 
     public Chain initialize() throws InvalidArgumentException, TransactionException {
+        return initialize(null);
+    }
+
+    /**
+     * Initialize the Chain from a snapshot of its configuration block when one is available, so a restart does
+     * not wait on the orderer for it. The snapshot is checked against the orderer's latest configuration in the
+     * background and refreshed when the configuration changed; without a valid snapshot the configuration block
+     * is fetched from the orderer and a snapshot written.
+     *
+     * @param configSnapshot file holding the snapshot; null to always fetch the configuration block
+     * @return
+     * @throws InvalidArgumentException
+     * @throws TransactionException
+     */
+
+    public Chain initialize(File configSnapshot) throws InvalidArgumentException, TransactionException {
 
         logger.debug(format("Chain %s initialize shutdown %b", name, shutdown));
 
@@ -601,7 +639,12 @@ public class Chain {
         }
 
         try {
-            parseConfigBlock();// Parse config block for this chain to get it's information.
+            final Block snapshotBlock = configSnapshot == null ? null : readConfigSnapshot(configSnapshot);
+            if (snapshotBlock != null) {
+                parseConfigBlock(snapshotBlock);
+            } else {
+                parseConfigBlock();// Parse config block for this chain to get it's information.
+            }
 
             loadCACertificates();  // put all MSP certs into cryptoSuite
 
@@ -621,6 +664,16 @@ public class Chain {
 
             logger.debug(format("Chain %s initialized", name));
 
+            if (configSnapshot != null) {
+                if (snapshotBlock == null) {
+                    if (configBlock != null) {
+                        writeConfigSnapshot(configSnapshot, configBlock);
+                    }
+                } else {
+                    executorService.execute(() -> refreshConfigSnapshot(configSnapshot, snapshotBlock));
+                }
+            }
+
             return this;
         } catch (TransactionException e) {
             logger.error(e.getMessage(), e);
@@ -797,7 +850,7 @@ public class Chain {
         return genesisBlock;
     }
 
-    Map<String, MSP> msps = new HashMap<>();
+    volatile Map<String, MSP> msps = new HashMap<>();
 
     boolean isSystemChain() {
         return systemChain;
@@ -899,9 +952,13 @@ public class Chain {
 
     protected void parseConfigBlock() throws TransactionException {
 
-        try {
+        parseConfigBlock(getConfigurationBlock());
+
+    }
+
+    private void parseConfigBlock(Block configBlock) throws TransactionException {
 
-            final Block configBlock = getConfigurationBlock();
+        try {
 
             logger.debug(format("Chain %s Got config block getting MSP data and anchorPeers data", name));
 
@@ -915,9 +972,8 @@ public class Chain {
 
             anchorPeers = Collections.unmodifiableSet(traverseConfigGroupsAnchors("", channelGroup, new HashSet<>()));
 
-        } catch (TransactionException e) {
-            logger.error(e.getMessage(), e);
-            throw e;
+            this.configBlock = configBlock;
+
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             throw new TransactionException(e);
@@ -991,18 +1047,7 @@ public class Chain {
             Block configBlock = getBlockByNumber(lastConfigIndex);
 
             //Little extra parsing but make sure this really is a config block for this chain.
-            Envelope envelopeRet = Envelope.parseFrom(configBlock.getData().getData(0));
-            Payload payload = Payload.parseFrom(envelopeRet.getPayload());
-            ChannelHeader channelHeader = ChannelHeader.parseFrom(payload.getHeader().getChannelHeader());
-            if (channelHeader.getType() != HeaderType.CONFIG.getNumber()) {
-                throw new TransactionException(format("Bad last configuation block type %d, expected %d",
-                        channelHeader.getType(), HeaderType.CONFIG.getNumber()));
-            }
-
-            if (!name.equals(channelHeader.getChannelId())) {
-                throw new TransactionException(format("Bad last configuation block channel id %s, expected %s",
-                        channelHeader.getChannelId(), name));
-            }
+            checkConfigBlock(configBlock);
 
             logger.trace(format("Chain %s getConfigurationBlock retraceturned %s", name, "" + configBlock));
             if (!logger.isTraceEnabled()) {
@@ -1021,6 +1066,121 @@ public class Chain {
 
     }
 
+    private void checkConfigBlock(Block configBlock) throws TransactionException, InvalidProtocolBufferException {
+
+        Envelope envelopeRet = Envelope.parseFrom(configBlock.getData().getData(0));
+        Payload payload = Payload.parseFrom(envelopeRet.getPayload());
+        ChannelHeader channelHeader = ChannelHeader.parseFrom(payload.getHeader().getChannelHeader());
+        if (channelHeader.getType() != HeaderType.CONFIG.getNumber()) {
+            throw new TransactionException(format("Bad last configuation block type %d, expected %d",
+                    channelHeader.getType(), HeaderType.CONFIG.getNumber()));
+        }
+
+        if (!name.equals(channelHeader.getChannelId())) {
+            throw new TransactionException(format("Bad last configuation block channel id %s, expected %s",
+                    channelHeader.getChannelId(), name));
+        }
+    }
+
+    /**
+     * Read the configuration block snapshot of this chain.
+     *
+     * @return the snapshot's configuration block; null if the file is missing, unreadable or not a
+     * configuration block of this chain
+     */
+    Block readConfigSnapshot(File file) {
+
+        if (!file.isFile()) {
+            logger.debug(format("Chain %s has no config snapshot %s", name, file));
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != CONFIG_SNAPSHOT_MAGIC || in.readInt() != CONFIG_SNAPSHOT_VERSION) {
+                throw new IOException("not a config snapshot of a supported version");
+            }
+            String chainName = in.readUTF();
+            if (!name.equals(chainName)) {
+                throw new IOException(format("snapshot of chain %s", chainName));
+            }
+            long number = in.readLong();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+
+            Block block = Block.parseFrom(bytes);
+            if (block.getHeader().getNumber() != number) {
+                throw new IOException(format("block number %d, expected %d", block.getHeader().getNumber(), number));
+            }
+            checkConfigBlock(block);
+
+            logger.debug(format("Chain %s read config snapshot of block %d", name, number));
+            return block;
+
+        } catch (Exception e) {
+            logger.warn(format("Chain %s ignoring config snapshot %s: %s", name, file, e.getMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Write the configuration block snapshot of this chain. The file is replaced atomically so a crash never
+     * leaves a partial snapshot behind.
+     */
+    void writeConfigSnapshot(File file, Block block) {
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can not create directory " + dir);
+            }
+            try (FileOutputStream fos = new FileOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                byte[] bytes = block.toByteArray();
+                out.writeInt(CONFIG_SNAPSHOT_MAGIC);
+                out.writeInt(CONFIG_SNAPSHOT_VERSION);
+                out.writeUTF(name);
+                out.writeLong(block.getHeader().getNumber());
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.debug(format("Chain %s wrote config snapshot of block %d", name, block.getHeader().getNumber()));
+
+        } catch (IOException e) {
+            logger.warn(format("Chain %s could not write config snapshot %s: %s", name, file, e.getMessage()));
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Check the configuration the chain was initialized with from a snapshot against the orderer's latest, and
+     * take up and snapshot the latest if the configuration changed since.
+     */
+    private void refreshConfigSnapshot(File file, Block snapshotBlock) {
+
+        try {
+            Block latest = getConfigurationBlock();
+            if (latest.getHeader().getNumber() == snapshotBlock.getHeader().getNumber()
+                    && latest.toByteString().equals(snapshotBlock.toByteString())) {
+                logger.debug(format("Chain %s config snapshot is current", name));
+                return;
+            }
+            logger.info(format("Chain %s config changed from block %d to %d since the snapshot", name,
+                    snapshotBlock.getHeader().getNumber(), latest.getHeader().getNumber()));
+
+            parseConfigBlock(latest);
+            loadCACertificates();
+            writeConfigSnapshot(file, latest);
+
+        } catch (Exception e) {
+            logger.warn(format("Chain %s could not check config snapshot: %s", name, e.getMessage()), e);
+        }
+    }
+
     private Block getBlockByNumber(final long number) throws TransactionException {
 
         logger.trace(format("getConfigurationBlock for chain %s", name));
@@ -2035,6 +2195,111 @@ public class Chain {
         return sendProposal(transactionProposalRequest, peers);
     }
 
+    /**
+     * Send a transaction proposal to specific peers without waiting for their responses. A peer failing or not
+     * answering within the request's proposal wait time gets a response with status 500, as with
+     * {@link #sendTransactionProposal(TransactionProposalRequest, Collection)}.
+     *
+     * @param transactionProposalRequest The transaction proposal to be sent to the peers.
+     * @param peers
+     * @return completed with the responses in the order of the peers once every peer answered, on a thread of the
+     * client's executor; fails with an InvalidArgumentException or ProposalException if the proposal could not be sent
+     */
+    public CompletableFuture<Collection<ProposalResponse>> sendTransactionProposalAsync(
+            TransactionProposalRequest transactionProposalRequest, Collection<Peer> peers) {
+
+        return sendTransactionProposalAsync(transactionProposalRequest, peers, null);
+    }
+
+    /**
+     * Send a transaction proposal to specific peers without waiting for their responses, telling about each
+     * response as it arrives.
+     *
+     * @param transactionProposalRequest The transaction proposal to be sent to the peers.
+     * @param peers
+     * @param onResponse called with the response of each peer as soon as it arrives, on a thread of the client's
+     *                   executor; may be null
+     * @return as {@link #sendTransactionProposalAsync(TransactionProposalRequest, Collection)}
+     */
+    public CompletableFuture<Collection<ProposalResponse>> sendTransactionProposalAsync(
+            TransactionProposalRequest transactionProposalRequest, Collection<Peer> peers,
+            Consumer<ProposalResponse> onResponse) {
+
+        CompletableFuture<Collection<ProposalResponse>> ret = new CompletableFuture<>();
+        try {
+            checkProposal(transactionProposalRequest, peers);
+
+            TransactionContext transactionContext = getTransactionContext();
+            transactionContext.verify(transactionProposalRequest.doVerify());
+            transactionContext.setProposalWaitTime(transactionProposalRequest.getProposalWaitTime());
+
+            ProposalBuilder proposalBuilder = ProposalBuilder.newBuilder();
+            proposalBuilder.context(transactionContext);
+            proposalBuilder.request(transactionProposalRequest);
+
+            SignedProposal signedProposal = getSignedProposal(proposalBuilder.build());
+
+            List<Peer> targets = new ArrayList<>(peers);
+            ProposalResponse[] proposalResponses = new ProposalResponse[targets.size()];
+            AtomicInteger outstanding = new AtomicInteger(targets.size());
+            for (int i = 0; i < targets.size(); i++) {
+                final int index = i;
+                final Peer peer = targets.get(i);
+                logger.debug(format("Chain %s send proposal to peer %s at url %s",
+                        name, peer.getName(), peer.getUrl()));
+
+                ListenableFuture<FabricProposalResponse.ProposalResponse> future;
+                try {
+                    future = peer.sendProposalAsync(signedProposal, transactionContext.getProposalWaitTime());
+                } catch (Exception e) {
+                    future = Futures.immediateFailedFuture(e);
+                }
+                final ListenableFuture<FabricProposalResponse.ProposalResponse> answer = future;
+                answer.addListener(() -> {
+                    try {
+                        FabricProposalResponse.ProposalResponse fabricResponse = null;
+                        String message;
+                        int status;
+                        try {
+                            fabricResponse = answer.get();
+                            message = fabricResponse.getResponse().getMessage();
+                            status = fabricResponse.getResponse().getStatus();
+                            logger.debug(format("Chain %s got back from peer %s status: %d, message: %s",
+                                    name, peer.getName(), status, message));
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof Error) {
+                                throw (Error) e.getCause();
+                            }
+                            message = proposalFailure(peer, e.getCause(), transactionContext);
+                            status = 500;
+                        }
+                        proposalResponses[index] = newProposalResponse(peer, fabricResponse, status, message,
+                                signedProposal, transactionContext);
+                        if (onResponse != null) {
+                            try {
+                                onResponse.accept(proposalResponses[index]);
+                            } catch (Exception e) {
+                                logger.warn(format("Chain %s response listener failed: %s", name, e.getMessage()), e);
+                            }
+                        }
+                        if (outstanding.decrementAndGet() == 0) {
+                            ret.complete(Arrays.asList(proposalResponses));
+                        }
+                    } catch (Throwable t) {
+                        ret.completeExceptionally(t);
+                    }
+                }, executorService);
+            }
+        } catch (InvalidArgumentException | ProposalException e) {
+            ret.completeExceptionally(e);
+        } catch (Exception e) {
+            ProposalException exp = new ProposalException(e);
+            logger.error(exp.getMessage(), exp);
+            ret.completeExceptionally(exp);
+        }
+        return ret;
+    }
+
     /**
      * Send Query proposal
      *
@@ -2065,26 +2330,7 @@ public class Chain {
 
     private Collection<ProposalResponse> sendProposal(TransactionRequest proposalRequest, Collection<Peer> peers) throws InvalidArgumentException, ProposalException {
 
-        if (shutdown) {
-            throw new InvalidArgumentException(format("Chain %s has been shutdown.", name));
-        }
-
-        if (null == proposalRequest) {
-            throw new InvalidArgumentException("sendProposal queryProposalRequest is null");
-        }
-        if (null == peers) {
-            throw new InvalidArgumentException("sendProposal peers is null");
-        }
-        if (peers.isEmpty()) {
-            throw new InvalidArgumentException("sendProposal peers to send to is empty.");
-        }
-        if (!isInitialized()) {
-            throw new ProposalException("sendProposal on chain not initialized.");
-        }
-
-        if (this.client.getUserContext() == null) {
-            throw new ProposalException("sendProposal on chain not initialized.");
-        }
+        checkProposal(proposalRequest, peers);
 
         try {
             TransactionContext transactionContext = getTransactionContext();
@@ -2108,6 +2354,30 @@ public class Chain {
         }
     }
 
+    private void checkProposal(TransactionRequest proposalRequest, Collection<Peer> peers) throws InvalidArgumentException, ProposalException {
+
+        if (shutdown) {
+            throw new InvalidArgumentException(format("Chain %s has been shutdown.", name));
+        }
+
+        if (null == proposalRequest) {
+            throw new InvalidArgumentException("sendProposal queryProposalRequest is null");
+        }
+        if (null == peers) {
+            throw new InvalidArgumentException("sendProposal peers is null");
+        }
+        if (peers.isEmpty()) {
+            throw new InvalidArgumentException("sendProposal peers to send to is empty.");
+        }
+        if (!isInitialized()) {
+            throw new ProposalException("sendProposal on chain not initialized.");
+        }
+
+        if (this.client.getUserContext() == null) {
+            throw new ProposalException("sendProposal on chain not initialized.");
+        }
+    }
+
     private Collection<ProposalResponse> sendProposalToPeers(Collection<Peer> peers,
                                                              SignedProposal signedProposal,
                                                              TransactionContext transactionContext) throws PeerException, InvalidArgumentException, ProposalException {
@@ -2156,31 +2426,50 @@ public class Chain {
                     logger.error(emsg, new Exception(cause));//wrapped in exception to get full stack trace.
                     throw (Error) cause;
                 } else {
-                    if (cause instanceof StatusRuntimeException) {
-                        message = format("Sending proposal to " + peerFuturePair.peer.getName() + " failed because of gRPC failure=%s",
-                                ((StatusRuntimeException) cause).getStatus());
-                    } else {
-                        message = format("Sending proposal to " + peerFuturePair.peer.getName() + " failed because of %s", cause.getMessage());
-                    }
+                    message = proposalFailure(peerFuturePair.peer, cause, transactionContext);
                     status = 500;
-                    logger.error(message, new Exception(cause));//wrapped in exception to get full stack trace.
                 }
             }
 
-            ProposalResponse proposalResponse = new ProposalResponse(transactionContext.getTxID(),
-                    transactionContext.getChainID(), status, message);
-            proposalResponse.setProposalResponse(fabricResponse);
-            proposalResponse.setProposal(signedProposal);
-            proposalResponse.setPeer(peerFuturePair.peer);
+            proposalResponses.add(newProposalResponse(peerFuturePair.peer, fabricResponse, status, message,
+                    signedProposal, transactionContext));
+        }
 
-            if (fabricResponse != null && transactionContext.getVerify()) {
-                proposalResponse.verify(cryptoSuite);
-            }
+        return proposalResponses;
+    }
 
-            proposalResponses.add(proposalResponse);
+    /**
+     * @return message of the response of a peer whose proposal call failed
+     */
+    private String proposalFailure(Peer peer, Throwable cause, TransactionContext transactionContext) {
+        String message;
+        if (cause instanceof StatusRuntimeException
+                && ((StatusRuntimeException) cause).getStatus().getCode() == io.grpc.Status.Code.DEADLINE_EXCEEDED) {
+            message = format("Sending proposal to " + peer.getName() + " failed because of timeout(%d milliseconds) expiration",
+                    transactionContext.getProposalWaitTime());
+        } else if (cause instanceof StatusRuntimeException) {
+            message = format("Sending proposal to " + peer.getName() + " failed because of gRPC failure=%s",
+                    ((StatusRuntimeException) cause).getStatus());
+        } else {
+            message = format("Sending proposal to " + peer.getName() + " failed because of %s", cause.getMessage());
         }
+        logger.error(message, new Exception(cause));//wrapped in exception to get full stack trace.
+        return message;
+    }
 
-        return proposalResponses;
+    private ProposalResponse newProposalResponse(Peer peer, FabricProposalResponse.ProposalResponse fabricResponse,
+                                                 int status, String message, SignedProposal signedProposal,
+                                                 TransactionContext transactionContext) throws ProposalException {
+        ProposalResponse proposalResponse = new ProposalResponse(transactionContext.getTxID(),
+                transactionContext.getChainID(), status, message);
+        proposalResponse.setProposalResponse(fabricResponse);
+        proposalResponse.setProposal(signedProposal);
+        proposalResponse.setPeer(peer);
+
+        if (fabricResponse != null && transactionContext.getVerify()) {
+            proposalResponse.verify(cryptoSuite);
+        }
+        return proposalResponse;
     }
 
     /////////////////////////////////////////////////////////
@@ -2209,48 +2498,8 @@ public class Chain {
     public CompletableFuture<TransactionEvent> sendTransaction(Collection<ProposalResponse> proposalResponses, Collection<Orderer> orderers) {
         try {
 
-            if (shutdown) {
-                throw new InvalidArgumentException(format("Chain %s has been shutdown.", name));
-            }
-
-            if (null == proposalResponses) {
-
-                throw new InvalidArgumentException("sendTransaction proposalResponses was null");
-            }
-
-            if (null == orderers) {
-                throw new InvalidArgumentException("sendTransaction Orderers is null");
-            }
-            if (orderers.isEmpty()) {
-                throw new InvalidArgumentException("sendTransaction Orderers to send to is empty.");
-            }
-            if (!isInitialized()) {
-                throw new TransactionException("sendTransaction on chain not initialized.");
-            }
-
-            List<FabricProposalResponse.Endorsement> ed = new LinkedList<>();
-            FabricProposal.Proposal proposal = null;
-            ByteString proposalResponsePayload = null;
-            String proposalTransactionID = null;
-
-            for (ProposalResponse sdkProposalResponse : proposalResponses) {
-                ed.add(sdkProposalResponse.getProposalResponse().getEndorsement());
-                if (proposal == null) {
-                    proposal = sdkProposalResponse.getProposal();
-                    proposalTransactionID = sdkProposalResponse.getTransactionID();
-                    proposalResponsePayload = sdkProposalResponse.getProposalResponse().getPayload();
-
-                }
-            }
-
-            TransactionBuilder transactionBuilder = TransactionBuilder.newBuilder();
-
-            Payload transactionPayload = transactionBuilder
-                    .chaincodeProposal(proposal)
-                    .endorsements(ed)
-                    .proposalResponsePayload(proposalResponsePayload).build();
-
-            Envelope transactionEnvelope = createTransactionEnvelop(transactionPayload);
+            Envelope transactionEnvelope = createTransactionEnvelope(proposalResponses, orderers);
+            String proposalTransactionID = proposalResponses.iterator().next().getTransactionID();
 
             CompletableFuture<TransactionEvent> sret = registerTxListener(proposalTransactionID);
             logger.debug(format("Chain %s sending transaction to orderer(s) with TxID %s ", name, proposalTransactionID));
@@ -2283,9 +2532,9 @@ public class Chain {
                 return sret;
             } else {
                 String emsg = format("Chain %s failed to place transaction %s on Orderer. Cause: UNSUCCESSFUL", name, proposalTransactionID);
-                CompletableFuture<TransactionEvent> ret = new CompletableFuture<>();
-                ret.completeExceptionally(new Exception(emsg));
-                return ret;
+                // Failing the listener's future unregisters it.
+                sret.completeExceptionally(new Exception(emsg));
+                return sret;
             }
         } catch (Exception e) {
 
@@ -2297,6 +2546,110 @@ public class Chain {
 
     }
 
+    /**
+     * Send transaction to orderer without waiting for the orderer's response. The orderers are tried in turn
+     * until one accepts the transaction.
+     *
+     * @param proposalResponses
+     * @param orderers
+     * @return completed once an orderer accepted the transaction, with the future of its commit as
+     * {@link #sendTransaction(Collection, Collection)} returns it; fails with a TransactionException if no orderer
+     * accepted it. Failing or cancelling the commit future, e.g. once a wait for it timed out, stops listening
+     * for the transaction.
+     */
+    public CompletableFuture<CompletableFuture<TransactionEvent>> sendTransactionAsync(Collection<ProposalResponse> proposalResponses,
+                                                                                     Collection<Orderer> orderers) {
+        CompletableFuture<CompletableFuture<TransactionEvent>> ret = new CompletableFuture<>();
+        try {
+
+            Envelope transactionEnvelope = createTransactionEnvelope(proposalResponses, orderers);
+            String proposalTransactionID = proposalResponses.iterator().next().getTransactionID();
+
+            CompletableFuture<TransactionEvent> sret = registerTxListener(proposalTransactionID);
+            ret.whenComplete((commit, t) -> {
+                if (t != null) {
+                    // Not ordered: no event will come for the transaction.
+                    sret.completeExceptionally(t);
+                }
+            });
+            logger.debug(format("Chain %s sending transaction to orderer(s) with TxID %s ", name, proposalTransactionID));
+
+            broadcast(transactionEnvelope, proposalTransactionID, new ArrayList<>(orderers).iterator(), sret, ret);
+        } catch (Exception e) {
+            ret.completeExceptionally(e);
+        }
+        return ret;
+    }
+
+    private void broadcast(Envelope transactionEnvelope, String proposalTransactionID, Iterator<Orderer> orderers,
+                           CompletableFuture<TransactionEvent> sret, CompletableFuture<CompletableFuture<TransactionEvent>> ret) {
+
+        if (!orderers.hasNext()) {
+            ret.completeExceptionally(new TransactionException(format("Chain %s failed to place transaction %s on Orderer. Cause: UNSUCCESSFUL",
+                    name, proposalTransactionID)));
+            return;
+        }
+
+        orderers.next().sendTransactionAsync(transactionEnvelope).whenComplete((resp, t) -> {
+            if (t == null && resp != null && resp.getStatus() == Status.SUCCESS) {
+                logger.debug(format("Chain %s successful sent to Orderer transaction id: %s", name, proposalTransactionID));
+                ret.complete(sret);
+            } else {
+                logger.error(format("Chain %s unsuccessful sendTransaction to orderer. Status %s", name,
+                        resp == null ? t : resp.getStatus()));
+                broadcast(transactionEnvelope, proposalTransactionID, orderers, sret, ret);
+            }
+        });
+    }
+
+    private Envelope createTransactionEnvelope(Collection<ProposalResponse> proposalResponses, Collection<Orderer> orderers)
+            throws InvalidArgumentException, TransactionException, CryptoException, InvalidProtocolBufferException {
+
+        if (shutdown) {
+            throw new InvalidArgumentException(format("Chain %s has been shutdown.", name));
+        }
+
+        if (null == proposalResponses) {
+
+            throw new InvalidArgumentException("sendTransaction proposalResponses was null");
+        }
+        if (proposalResponses.isEmpty()) {
+            throw new InvalidArgumentException("sendTransaction proposalResponses is empty.");
+        }
+
+        if (null == orderers) {
+            throw new InvalidArgumentException("sendTransaction Orderers is null");
+        }
+        if (orderers.isEmpty()) {
+            throw new InvalidArgumentException("sendTransaction Orderers to send to is empty.");
+        }
+        if (!isInitialized()) {
+            throw new TransactionException("sendTransaction on chain not initialized.");
+        }
+
+        List<FabricProposalResponse.Endorsement> ed = new LinkedList<>();
+        FabricProposal.Proposal proposal = null;
+        ByteString proposalResponsePayload = null;
+
+        for (ProposalResponse sdkProposalResponse : proposalResponses) {
+            ed.add(sdkProposalResponse.getProposalResponse().getEndorsement());
+            if (proposal == null) {
+                proposal = sdkProposalResponse.getProposal();
+                proposalResponsePayload = sdkProposalResponse.getProposalResponse().getPayload();
+
+            }
+        }
+
+        TransactionBuilder transactionBuilder = TransactionBuilder.newBuilder();
+
+        Payload transactionPayload = transactionBuilder
+                .chaincodeProposal(proposal)
+                .endorsements(ed)
+                .proposalResponsePayload(proposalResponsePayload).build();
+
+        return createTransactionEnvelop(transactionPayload);
+    }
+
     private Envelope createTransactionEnvelop(Payload transactionPayload) throws CryptoException {
 
         Envelope.Builder ceb = Envelope.newBuilder();
@@ -2644,19 +2997,23 @@ public class Chain {
             }
         }
 
+        void removeListener() {
+            synchronized (txListeners) {
+                LinkedList<TL> l = txListeners.get(txID);
+
+                if (null != l && l.removeFirstOccurrence(this) && l.isEmpty()) {
+                    txListeners.remove(txID);
+                }
+            }
+        }
+
         void fire(BlockEvent.TransactionEvent transactionEvent) {
 
             if (fired.getAndSet(true)) {
                 return;
             }
 
-            synchronized (txListeners) {
-                LinkedList<TL> l = txListeners.get(txID);
-
-                if (null != l) {
-                    l.removeFirstOccurrence(this);
-                }
-            }
+            removeListener();
             if (future.isDone()) {
                 fired.set(true);
                 return;
@@ -2710,6 +3067,7 @@ public class Chain {
 
     /**
      * Register a transactionId that to get notification on when the event is seen in the block chain.
+     * Failing or cancelling the returned future unregisters it.
      *
      * @param txid
      * @return
@@ -2719,7 +3077,13 @@ public class Chain {
 
         CompletableFuture<TransactionEvent> future = new CompletableFuture<>();
 
-        new TL(txid, future);
+        TL tl = new TL(txid, future);
+        future.whenComplete((event, t) -> {
+            if (t != null) {
+                // Given up on by the caller, e.g. timed out or never ordered.
+                tl.removeListener();
+            }
+        });
 
         return future;
 
@@ -86,6 +86,17 @@ class EndorserClient {
         return futureStub.processProposal(proposal);
     }
 
+    /**
+     * @param timeout milliseconds before the call fails with DEADLINE_EXCEEDED
+     */
+    public ListenableFuture<FabricProposalResponse.ProposalResponse> sendProposalAsync(FabricProposal.SignedProposal proposal,
+                                                                                      long timeout) throws PeerException {
+        if (shutdown) {
+            throw new PeerException("Shutdown");
+        }
+        return futureStub.withDeadlineAfter(timeout, TimeUnit.MILLISECONDS).processProposal(proposal);
+    }
+
     public FabricProposalResponse.ProposalResponse sendProposal(FabricProposal.SignedProposal proposal) throws PeerException {
 
         if (shutdown) {
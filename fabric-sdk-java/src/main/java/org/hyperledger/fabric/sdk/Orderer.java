@@ -15,6 +15,7 @@
 package org.hyperledger.fabric.sdk;
 
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 import io.netty.util.internal.StringUtil;
 import org.apache.commons.logging.Log;
@@ -143,6 +144,40 @@ public class Orderer {
 
     }
 
+    /**
+     * Broadcast a transaction without waiting for the orderer's response.
+     *
+     * @return completed with the orderer's response; fails with a TransactionException
+     */
+    CompletableFuture<Ab.BroadcastResponse> sendTransactionAsync(Common.Envelope transaction) {
+        if (shutdown) {
+            CompletableFuture<Ab.BroadcastResponse> ret = new CompletableFuture<>();
+            ret.completeExceptionally(new TransactionException(format("Orderer %s was shutdown.", name)));
+            return ret;
+        }
+
+        logger.debug(format("Order.sendTransactionAsync name: %s, url: %s", name, url));
+
+        OrdererClient localOrdererClient = ordererClient;
+
+        try {
+            if (localOrdererClient == null || !localOrdererClient.isChannelActive()) {
+                localOrdererClient = ordererClient = new OrdererClient(new Endpoint(url, properties).getChannelBuilder());
+            }
+        } catch (Exception e) {
+            CompletableFuture<Ab.BroadcastResponse> ret = new CompletableFuture<>();
+            ret.completeExceptionally(new TransactionException(format("Orderer %s connection failed.", name), e));
+            return ret;
+        }
+
+        final OrdererClient sendingClient = localOrdererClient;
+        return localOrdererClient.sendTransactionAsync(transaction).whenComplete((resp, t) -> {
+            if (t != null && ordererClient == sendingClient) { //For any error lets start with a fresh connection.
+                ordererClient = null;
+            }
+        });
+    }
+
     static Orderer createNewInstance(String name, String url, Properties properties) throws InvalidArgumentException {
         return new Orderer(name, url, properties);
 
@@ -16,8 +16,11 @@ package org.hyperledger.fabric.sdk;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
@@ -81,66 +84,73 @@ class OrdererClient {
 
     Ab.BroadcastResponse sendTransaction(Common.Envelope envelope) throws Exception {
 
+        try {
+            Ab.BroadcastResponse resp = sendTransactionAsync(envelope).get(2, TimeUnit.MINUTES);
+            logger.debug("Done waiting for reply! Got:" + resp);
+            return resp;
+        } catch (TimeoutException e) {
+            TransactionException ste = new TransactionException("Send transactions failed. Reason:  timeout");
+            logger.error("sendTransaction error " + ste.getMessage(), ste);
+            throw ste;
+        } catch (ExecutionException e) {
+            TransactionException ste = (TransactionException) e.getCause();
+            logger.error("sendTransaction error " + ste.getMessage(), ste);
+            throw ste;
+        } catch (InterruptedException e) {
+            logger.error(e);
+
+        }
+
+        return null;
+    }
+
+    /**
+     * Broadcast the envelope without waiting for the orderer.
+     *
+     * @return completed with the orderer's response on a gRPC thread, or with null if the orderer closed
+     * the stream without one; fails with a TransactionException
+     */
+    CompletableFuture<Ab.BroadcastResponse> sendTransactionAsync(Common.Envelope envelope) {
+
+        final CompletableFuture<Ab.BroadcastResponse> ret = new CompletableFuture<>();
         if (shutdown) {
-            throw new TransactionException("Orderer client is shutdown");
+            ret.completeExceptionally(new TransactionException("Orderer client is shutdown"));
+            return ret;
         }
 
-        final CountDownLatch finishLatch = new CountDownLatch(1);
         AtomicBroadcastGrpc.AtomicBroadcastStub broadcast = AtomicBroadcastGrpc.newStub(channel);
-        AtomicBroadcastGrpc.AtomicBroadcastBlockingStub bsc = AtomicBroadcastGrpc.newBlockingStub(channel);
-        bsc.withDeadlineAfter(2, TimeUnit.MINUTES);
-
-        final Ab.BroadcastResponse[] ret = new Ab.BroadcastResponse[1];
-        final Throwable[] throwable = new Throwable[] {null};
 
         StreamObserver<Ab.BroadcastResponse> so = new StreamObserver<Ab.BroadcastResponse>() {
             @Override
             public void onNext(Ab.BroadcastResponse resp) {
                 // logger.info("Got Broadcast response: " + resp);
                 logger.debug("resp status value: " + resp.getStatusValue() + ", resp: " + resp.getStatus());
-                ret[0] = resp;
-                finishLatch.countDown();
+                ret.complete(resp);
 
             }
 
             @Override
             public void onError(Throwable t) {
-                throwable[0] = t;
-                finishLatch.countDown();
+                ret.completeExceptionally(new TransactionException("Send transactions failed. Reason: " + t.getMessage(), t));
             }
 
             @Override
             public void onCompleted() {
                 logger.warn("onCompleted");
-                finishLatch.countDown();
+                ret.complete(null);
             }
         };
 
-        StreamObserver<Common.Envelope> nso = broadcast.broadcast(so);
-
-        nso.onNext(envelope);
-        //nso.onCompleted();
-
         try {
-            if(!finishLatch.await(2, TimeUnit.MINUTES)){
-                TransactionException ste = new TransactionException("Send transactions failed. Reason:  timeout");
-                logger.error("sendTransaction error " + ste.getMessage(), ste);
-                throw ste;
-            }
-            if (throwable[0] != null) {
-                //get full stack trace
-                TransactionException ste = new TransactionException("Send transactions failed. Reason: " + throwable[0].getMessage(), throwable[0]);
-                logger.error("sendTransaction error " + ste.getMessage(), ste);
-                throw ste;
-            }
-            logger.debug("Done waiting for reply! Got:" + ret[0]);
-
-        } catch (InterruptedException e) {
-            logger.error(e);
+            StreamObserver<Common.Envelope> nso = broadcast.broadcast(so);
 
+            nso.onNext(envelope);
+            //nso.onCompleted();
+        } catch (RuntimeException e) {
+            ret.completeExceptionally(new TransactionException("Send transactions failed. Reason: " + e.getMessage(), e));
         }
 
-        return ret[0];
+        return ret;
     }
 
     public DeliverResponse[] sendDeliver(Common.Envelope envelope) throws TransactionException {
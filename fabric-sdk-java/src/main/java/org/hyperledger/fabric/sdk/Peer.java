@@ -158,6 +158,33 @@ public class Peer {
         }
     }
 
+    /**
+     * Like {@link #sendProposalAsync(FabricProposal.SignedProposal)}, failing the call after timeout milliseconds.
+     */
+    ListenableFuture<FabricProposalResponse.ProposalResponse> sendProposalAsync(FabricProposal.SignedProposal proposal,
+                                                                               long timeout)
+            throws PeerException, InvalidArgumentException {
+        checkSendProposal(proposal);
+
+        logger.debug(format("peer.sendProposalAsync name: %s, url: %s, timeout: %d", name, url, timeout));
+
+        EndorserClient localEndorserClient = endorserClent; //work off thread local copy.
+
+        if (null == localEndorserClient || !localEndorserClient.isChannelActive()) {
+            endorserClent = localEndorserClient = new EndorserClient(new Endpoint(url, properties).getChannelBuilder());
+        }
+
+        try {
+            return localEndorserClient.sendProposalAsync(proposal, timeout);
+        } catch (PeerException e) { //Any error start with a clean connection.
+            endorserClent = null;
+            throw e;
+        } catch (Throwable t) {
+            endorserClent = null;
+            throw t;
+        }
+    }
+
     FabricProposalResponse.ProposalResponse sendProposal(FabricProposal.SignedProposal proposal)
             throws PeerException, InvalidArgumentException {
         checkSendProposal(proposal);
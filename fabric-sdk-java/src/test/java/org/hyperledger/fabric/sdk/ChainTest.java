@@ -14,7 +14,24 @@
 
 package org.hyperledger.fabric.sdk;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.hyperledger.fabric.protos.common.Common.Block;
+import org.hyperledger.fabric.protos.common.Common.BlockData;
+import org.hyperledger.fabric.protos.common.Common.BlockHeader;
+import org.hyperledger.fabric.protos.common.Common.ChannelHeader;
+import org.hyperledger.fabric.protos.common.Common.Envelope;
+import org.hyperledger.fabric.protos.common.Common.Header;
+import org.hyperledger.fabric.protos.common.Common.HeaderType;
+import org.hyperledger.fabric.protos.common.Common.Payload;
 import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -221,4 +238,134 @@ public class ChainTest {
 
     }
 
+    @Test
+    public void testSendTransactionProposalAsyncNotInitialized() throws Exception {
+
+        final Chain testchain = new Chain("chain4", hfclient);
+        testchain.addPeer(hfclient.newPeer("peer_", "grpc://localhost:7051"));
+
+        CompletableFuture<Collection<ProposalResponse>> future = testchain.sendTransactionProposalAsync(
+                hfclient.newTransactionProposalRequest(), testchain.getPeers());
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected proposal on uninitialized chain to fail.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getClass() == ProposalException.class);
+        }
+    }
+
+    @Test
+    public void testSendTransactionProposalAsyncNoPeers() throws Exception {
+
+        final Chain testchain = new Chain("chain5", hfclient);
+
+        CompletableFuture<Collection<ProposalResponse>> future = testchain.sendTransactionProposalAsync(
+                hfclient.newTransactionProposalRequest(), Collections.emptyList());
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected proposal without peers to fail.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getClass() == InvalidArgumentException.class);
+        }
+    }
+
+    @Test
+    public void testSendTransactionAsyncNoResponses() throws Exception {
+
+        final Chain testchain = new Chain("chain6", hfclient);
+        testchain.addOrderer(hfclient.newOrderer("orderer_", "grpc://localhost:7050"));
+
+        CompletableFuture<CompletableFuture<BlockEvent.TransactionEvent>> future = testchain.sendTransactionAsync(
+                Collections.emptyList(), testchain.getOrderers());
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected transaction without proposal responses to fail.");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getClass() == InvalidArgumentException.class);
+        }
+    }
+
+    @Test
+    public void testConfigSnapshotRoundTrip() throws Exception {
+
+        final Chain testchain = new Chain("chain7", hfclient);
+        final File snapshot = File.createTempFile("chain7", ".snapshot");
+        snapshot.delete();
+
+        try {
+            Assert.assertNull(testchain.readConfigSnapshot(snapshot));
+
+            Block block = newConfigBlock("chain7", 3);
+            testchain.writeConfigSnapshot(snapshot, block);
+            Assert.assertEquals(block, testchain.readConfigSnapshot(snapshot));
+
+            // Another chain's snapshot is not taken up.
+            Assert.assertNull(new Chain("chain8", hfclient).readConfigSnapshot(snapshot));
+
+            Files.write(snapshot.toPath(), new byte[] {1, 2, 3});
+            Assert.assertNull(testchain.readConfigSnapshot(snapshot));
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    @Test
+    public void testChainInitializeFromConfigSnapshot() throws Exception {
+
+        class MockChain extends Chain {
+            int fetched;
+
+            MockChain(String name, HFClient client) throws InvalidArgumentException {
+                super(name, client);
+            }
+
+            @Override
+            protected void parseConfigBlock() {
+                fetched++;
+            }
+        }
+
+        final File snapshot = File.createTempFile("chain9", ".snapshot");
+
+        try {
+            final MockChain testchain = new MockChain("chain9", hfclient);
+            testchain.addPeer(hfclient.newPeer("peer_", "grpc://localhost:7051"));
+            testchain.writeConfigSnapshot(snapshot, newConfigBlock("chain9", 0));
+
+            testchain.initialize(snapshot);
+            Assert.assertTrue(testchain.isInitialized());
+            Assert.assertEquals(0, testchain.fetched);
+
+            final MockChain corrupted = new MockChain("chain9", hfclient);
+            corrupted.addPeer(hfclient.newPeer("peer_", "grpc://localhost:7051"));
+            Files.write(snapshot.toPath(), new byte[0]);
+
+            corrupted.initialize(snapshot);
+            Assert.assertTrue(corrupted.isInitialized());
+            Assert.assertEquals(1, corrupted.fetched);
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    private static Block newConfigBlock(String chainName, long number) {
+
+        ChannelHeader channelHeader = ChannelHeader.newBuilder()
+                .setType(HeaderType.CONFIG.getNumber())
+                .setChannelId(chainName)
+                .build();
+        Payload payload = Payload.newBuilder()
+                .setHeader(Header.newBuilder().setChannelHeader(channelHeader.toByteString()))
+                .build();
+        Envelope envelope = Envelope.newBuilder().setPayload(payload.toByteString()).build();
+
+        return Block.newBuilder()
+                .setHeader(BlockHeader.newBuilder().setNumber(number))
+                .setData(BlockData.newBuilder().addData(envelope.toByteString()))
+                .build();
+    }
+
 }
@@ -17,9 +17,14 @@ package org.hyperledger.fabric.sdk;
 
 
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.hyperledger.fabric.protos.common.Common;
 import org.hyperledger.fabric.protos.orderer.Ab;
 import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.TransactionException;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -113,6 +118,17 @@ public class OrdererTest {
                         Assert.fail("Expected null chain to throw exception.");
                 }
         }
+        @Test
+        public void testBroadcastAsyncUnreachable() throws Exception {
+                Orderer unreachable = hfclient.newOrderer("unreachable", "grpc://localhost:5152");
+                CompletableFuture<Ab.BroadcastResponse> future = unreachable.sendTransactionAsync(Common.Envelope.getDefaultInstance());
+                try {
+                        future.get(30, TimeUnit.SECONDS);
+                        Assert.fail("Expected broadcast to an unreachable orderer to fail.");
+                } catch (ExecutionException e) {
+                        Assert.assertTrue(e.getCause().getClass() == TransactionException.class);
+                }
+        }
         @Override
         protected void finalize() throws Throwable {
                 super.finalize();
@@ -1,17 +1,87 @@
+import blockchain.CertificateEvents;
+import blockchain.CertificateRegistry;
 import blockchain.Fabric;
 import blockchain.SampleOrg;
 import org.hyperledger.fabric.sdk.Chain;
+import server.AddCertificateBatcher;
+import server.AdmissionControl;
+import server.CertificateCache;
+import server.CertificateIndex;
+import server.CertificateNotifier;
+import server.CertificateRoutes;
+import server.CertificateVersions;
+import server.ChaincodeExecutor;
+import server.HttpSnoopServer;
+import server.HttpSnoopServerInitializer;
+import server.IdempotencyTable;
+import server.Metrics;
+import server.ResponseCompression;
+import server.RouteTable;
+import server.ServerConfig;
+import server.StaticFiles;
+import server.TransactionTable;
 
 public class Main {
     public static void main(String[] args) throws Exception {
         Fabric fabric = new Fabric("foo", "educhain", new String[]{"a", "500", "b", "200"});
         SampleOrg sampleOrg = fabric.getConfiguredOrganisationParameters();
         Chain chain = fabric.initBlockchain(sampleOrg);
-        String update = fabric.invokeChaincode(chain, new String[]{"move", "a", "b", "100"});
-        System.out.println("update:" + update);
-        String query = fabric.invokeChaincode(chain, new String[]{"query", "a"});
-        System.out.println("query:" + query);
-        query = fabric.invokeChaincode(chain, new String[]{"query", "b"});
-        System.out.println("query:" + query);
+
+        ServerConfig config = ServerConfig.getConfig();
+        Metrics metrics = new Metrics();
+        ChaincodeExecutor executor = new ChaincodeExecutor(config);
+        metrics.register("chaincode.inFlight", executor::getInFlight);
+        ChaincodeExecutor exports = new ChaincodeExecutor(config.getExportThreads(), config.getExportThreads());
+        metrics.register("export.inFlight", exports::getInFlight);
+
+        CertificateCache cache = new CertificateCache(config.getCertificateCacheSize());
+        cache.registerMetrics(metrics);
+        CertificateEvents events = CertificateEvents.register(chain, fabric.getChainCodeName());
+        events.addListener(cache);
+        CertificateVersions versions = new CertificateVersions(config.getCertificateVersionsSize());
+        versions.registerMetrics(metrics);
+        events.addListener(versions);
+        versions.setLastBlock(chain.queryBlockchainInfo().getHeight() - 1);
+        CertificateNotifier notifier = new CertificateNotifier(config);
+        notifier.registerMetrics(metrics);
+        events.addListener(notifier);
+        CertificateIndex index = new CertificateIndex(config);
+        index.registerMetrics(metrics);
+        events.addListener(index);
+
+        TransactionTable transactions = new TransactionTable(config);
+        transactions.registerMetrics(metrics);
+
+        CertificateRegistry registry = new CertificateRegistry(fabric, chain);
+        AddCertificateBatcher batcher = new AddCertificateBatcher(registry, executor, transactions,
+                config.getAddCertificateBatchMaxSize(), config.getAddCertificateBatchMaxDelay());
+        batcher.registerMetrics(metrics);
+
+        IdempotencyTable idempotency = new IdempotencyTable(config);
+        idempotency.registerMetrics(metrics);
+
+        AdmissionControl admission = new AdmissionControl(config);
+        admission.registerMetrics(metrics);
+
+        ResponseCompression compression = new ResponseCompression(config);
+        StaticFiles images = new StaticFiles(config);
+        RouteTable routes = CertificateRoutes.create(registry, executor, exports, cache, versions, batcher,
+                idempotency, transactions, compression, admission, notifier, index, images, config, metrics);
+        index.start(registry);
+        HttpSnoopServer server = new HttpSnoopServer(config,
+                new HttpSnoopServerInitializer(HttpSnoopServer.sslContext(config), routes, executor, compression,
+                        config));
+        try {
+            server.start();
+            server.awaitTermination();
+        } finally {
+            server.stop();
+            batcher.shutdown();
+            executor.shutdown();
+            exports.shutdown();
+            transactions.shutdown();
+            index.shutdown();
+            chain.shutdown(true);
+        }
     }
 }
@@ -0,0 +1,87 @@
+package blockchain;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperledger.fabric.sdk.BlockEvent;
+import org.hyperledger.fabric.sdk.BlockListener;
+import org.hyperledger.fabric.sdk.Chain;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The one block listener of the server. Decodes the certificate writes of every committed block and
+ * hands them to the registered {@link Listener}s.
+ * <p>
+ * The chain delivers each block once per event hub and calls listeners from a thread pool, so blocks are
+ * de-duplicated here by number and listeners see every block exactly once.
+ */
+public class CertificateEvents implements BlockListener {
+    private static final Log logger = LogFactory.getLog(CertificateEvents.class);
+
+    /** Block numbers remembered for de-duplication; far more than the event hubs can be apart */
+    private static final int SEEN_BLOCKS = 1024;
+
+    public interface Listener {
+        /**
+         * Called once per committed block with the certificate writes it contains, in block order.
+         * Called from chain event threads; must not block.
+         */
+        void blockCommitted(long blockNumber, List<CertificateWrite> writes);
+    }
+
+    private final String chaincodeName;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Long, Boolean> seenBlocks = new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > SEEN_BLOCKS;
+        }
+    };
+
+    public CertificateEvents(String chaincodeName) {
+        this.chaincodeName = chaincodeName;
+    }
+
+    /**
+     * Create the listener and register it with the chain.
+     */
+    public static CertificateEvents register(Chain chain, String chaincodeName) throws InvalidArgumentException {
+        CertificateEvents events = new CertificateEvents(chaincodeName);
+        chain.registerBlockListener(events);
+        return events;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void received(BlockEvent blockEvent) {
+        long blockNumber = blockEvent.getBlockNumber();
+        synchronized (seenBlocks) {
+            if (seenBlocks.put(blockNumber, Boolean.TRUE) != null) {
+                return;
+            }
+        }
+
+        List<CertificateWrite> writes;
+        try {
+            writes = CertificateWrite.fromBlock(blockEvent, chaincodeName);
+        } catch (RuntimeException e) {
+            logger.error(String.format("Could not decode block %d", blockNumber), e);
+            return;
+        }
+
+        for (Listener listener : listeners) {
+            try {
+                listener.blockCommitted(blockNumber, writes);
+            } catch (RuntimeException e) { //Don't let one listener stop the rest.
+                logger.error("Certificate listener failed on block " + blockNumber, e);
+            }
+        }
+    }
+}
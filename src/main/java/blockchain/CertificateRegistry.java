@@ -0,0 +1,82 @@
+package blockchain;
+
+import com.alibaba.fastjson.JSON;
+import data.AddCertificate;
+import data.GetCertificates;
+import org.hyperledger.fabric.sdk.Chain;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Certificate operations of the educhain chaincode. Writes return futures and never block; the other methods
+ * block until the chain answers, so callers on a Netty event loop must run them through
+ * {@link server.ChaincodeExecutor}.
+ */
+public class CertificateRegistry {
+    public static final String ADD_CERTIFICATE = "addCertificate";
+    public static final String ADD_CERTIFICATES = "addCertificates";
+    public static final String GET_CERTIFICATES = "getCertificates";
+
+    private final Fabric fabric;
+    private final Chain chain;
+
+    public CertificateRegistry(Fabric fabric, Chain chain) {
+        this.fabric = fabric;
+        this.chain = chain;
+    }
+
+    /**
+     * Record certificates in one transaction. Several certificates go to addCertificates, which takes the
+     * records as user_id, certificate_id pairs.
+     *
+     * @param listener told about every state of the transaction, may be null
+     * @return completed once the orderer accepted the transaction; fails with an {@link InvocationException}
+     */
+    public CompletableFuture<SubmittedTransaction> addCertificates(List<AddCertificate> certificates,
+                                                                   TransactionState.Listener listener) {
+        String[] arguments = new String[1 + 2 * certificates.size()];
+        arguments[0] = certificates.size() == 1 ? ADD_CERTIFICATE : ADD_CERTIFICATES;
+        int i = 1;
+        for (AddCertificate certificate : certificates) {
+            arguments[i++] = certificate.getUser_id();
+            arguments[i++] = certificate.getCertificate_id();
+        }
+        return fabric.submitChaincodeAsync(chain, arguments, listener);
+    }
+
+    /**
+     * Read the user's certificates from a peer, without a transaction.
+     *
+     * @return certificates recorded for the user
+     */
+    public GetCertificates getCertificates(String userId) throws Exception {
+        String payload = fabric.queryChaincode(chain, new String[]{GET_CERTIFICATES, userId});
+        return toCertificates(payload);
+    }
+
+    /**
+     * @return number of blocks in the ledger
+     */
+    public long getBlockHeight() throws Exception {
+        return chain.queryBlockchainInfo().getHeight();
+    }
+
+    /**
+     * @return certificate writes of a committed block, in block order
+     */
+    public List<CertificateWrite> getCertificateWrites(long blockNumber) throws Exception {
+        return CertificateWrite.fromBlock(chain.queryBlockByNumber(blockNumber), fabric.getChainCodeName());
+    }
+
+    static GetCertificates toCertificates(String payload) {
+        GetCertificates certificates = new GetCertificates();
+        if (payload != null && !payload.isEmpty()) {
+            List<GetCertificates.CertificateItem> items = JSON.parseArray(payload, GetCertificates.CertificateItem.class);
+            if (items != null) {
+                certificates.setCertificates(items);
+            }
+        }
+        return certificates;
+    }
+}
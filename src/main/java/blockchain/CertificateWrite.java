@@ -0,0 +1,148 @@
+package blockchain;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.google.protobuf.InvalidProtocolBufferException;
+import data.GetCertificates;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperledger.fabric.protos.ledger.rwset.kvrwset.KvRwset;
+import org.hyperledger.fabric.sdk.BlockInfo;
+import org.hyperledger.fabric.sdk.TxReadWriteSetInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A certificate key written by a valid, committed transaction.
+ * <p>
+ * The educhain chaincode stores every certificate under the composite key
+ * ("certificate", user_id, certificate_id) with the JSON certificate item as value.
+ */
+public class CertificateWrite {
+    private static final Log logger = LogFactory.getLog(CertificateWrite.class);
+
+    static final String OBJECT_TYPE = "certificate";
+    private static final char COMPOSITE_KEY_SEPARATOR = '\u0000';
+
+    private final String userId;
+    private final String certificateId;
+    private final GetCertificates.CertificateItem item;
+    private final long blockNumber;
+    private final String transactionId;
+
+    CertificateWrite(String userId, String certificateId, GetCertificates.CertificateItem item,
+                     long blockNumber, String transactionId) {
+        this.userId = userId;
+        this.certificateId = certificateId;
+        this.item = item;
+        this.blockNumber = blockNumber;
+        this.transactionId = transactionId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getCertificateId() {
+        return certificateId;
+    }
+
+    /**
+     * @return written certificate, or null if the key was deleted or its value could not be parsed
+     */
+    public GetCertificates.CertificateItem getItem() {
+        return item;
+    }
+
+    public boolean isDelete() {
+        return item == null;
+    }
+
+    public long getBlockNumber() {
+        return blockNumber;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Extract the certificate writes of the chaincode from every valid transaction of a block.
+     *
+     * @param block         block from an event or a block query
+     * @param chaincodeName namespace of the chaincode in the write sets
+     * @return writes in block order
+     */
+    public static List<CertificateWrite> fromBlock(BlockInfo block, String chaincodeName) {
+        List<CertificateWrite> writes = new ArrayList<>();
+        for (BlockInfo.EnvelopeInfo envelope : block.getEnvelopeInfos()) {
+            if (!(envelope instanceof BlockInfo.TansactionEnvelopeInfo) || !envelope.isValid()) {
+                continue;
+            }
+            BlockInfo.TansactionEnvelopeInfo transaction = (BlockInfo.TansactionEnvelopeInfo) envelope;
+            for (BlockInfo.TansactionEnvelopeInfo.TransactionActionInfo action : transaction.getTransactionActionInfos()) {
+                TxReadWriteSetInfo rwset = action.getTxReadWriteSet();
+                if (rwset == null) {
+                    continue;
+                }
+                for (TxReadWriteSetInfo.NsRwsetInfo ns : rwset.getNsRwsetInfos()) {
+                    if (!chaincodeName.equals(ns.getNaamespace())) {
+                        continue;
+                    }
+                    try {
+                        for (KvRwset.KVWrite write : ns.getRwset().getWritesList()) {
+                            CertificateWrite certificateWrite = fromWrite(write, block.getBlockNumber(),
+                                    transaction.getTransactionID());
+                            if (certificateWrite != null) {
+                                writes.add(certificateWrite);
+                            }
+                        }
+                    } catch (InvalidProtocolBufferException e) {
+                        logger.warn(String.format("Could not parse write set of transaction %s in block %d",
+                                transaction.getTransactionID(), block.getBlockNumber()), e);
+                    }
+                }
+            }
+        }
+        return writes;
+    }
+
+    private static CertificateWrite fromWrite(KvRwset.KVWrite write, long blockNumber, String transactionId) {
+        String[] attributes = splitCompositeKey(write.getKey());
+        if (attributes == null || attributes.length != 3 || !OBJECT_TYPE.equals(attributes[0])) {
+            return null;
+        }
+        GetCertificates.CertificateItem item = null;
+        if (!write.getIsDelete()) {
+            try {
+                item = JSON.parseObject(write.getValue().toString(UTF_8), GetCertificates.CertificateItem.class);
+            } catch (JSONException e) {
+                logger.warn(String.format("Certificate %s of user %s has an unreadable value", attributes[2], attributes[1]));
+            }
+        }
+        return new CertificateWrite(attributes[1], attributes[2], item, blockNumber, transactionId);
+    }
+
+    /**
+     * Composite keys are laid out as 0x00 objectType 0x00 attr1 0x00 attr2 0x00.
+     *
+     * @return object type followed by the attributes, or null for a simple key
+     */
+    static String[] splitCompositeKey(String key) {
+        if (key.isEmpty() || key.charAt(0) != COMPOSITE_KEY_SEPARATOR) {
+            return null;
+        }
+        List<String> parts = new ArrayList<>(3);
+        int start = 1;
+        for (int i = 1; i < key.length(); i++) {
+            if (key.charAt(i) == COMPOSITE_KEY_SEPARATOR) {
+                parts.add(key.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return parts.toArray(new String[parts.size()]);
+    }
+}
@@ -0,0 +1,268 @@
+package blockchain;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperledger.fabric.protos.common.MspPrincipal;
+import org.hyperledger.fabric.protos.common.Policies;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.Peer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Picks the fewest peers whose endorsements satisfy the chaincode's endorsement policy, instead of asking
+ * every peer of the chain. Among the peers of an organisation the fastest and least loaded are preferred;
+ * a peer that failed is passed over for a while, longer after each consecutive failure.
+ * <p>
+ * A peer endorses as a member of its organisation's MSP, so signed-by rules naming an admin or a single
+ * identity cannot be met by peers and only member rules count.
+ */
+public class EndorserSelector {
+    private static final Log logger = LogFactory.getLog(EndorserSelector.class);
+
+    /** Weight of a new latency sample in the moving average */
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final long MIN_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 60000;
+    /** Alternatives kept per policy rule; the policies in use have a handful */
+    private static final int MAX_ALTERNATIVES = 64;
+
+    /** Ways to satisfy the policy, each the number of distinct peers needed per MSP id, fewest peers first */
+    private final List<Map<String, Integer>> alternatives;
+    private final Map<Peer, String> msps;
+    private final Map<Peer, PeerStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * @param msps MSP id of every peer that may be selected
+     */
+    public EndorserSelector(ChaincodeEndorsementPolicy policy, Map<Peer, String> msps)
+            throws InvalidProtocolBufferException {
+        Policies.SignaturePolicyEnvelope envelope =
+                Policies.SignaturePolicyEnvelope.parseFrom(policy.getChaincodeEndorsementPolicyAsBytes());
+        List<String> principals = new ArrayList<>();
+        for (MspPrincipal.MSPPrincipal identity : envelope.getIdentitiesList()) {
+            principals.add(memberMsp(identity));
+        }
+        this.alternatives = alternatives(envelope.getPolicy(), principals);
+        this.msps = new HashMap<>(msps);
+        if (alternatives.isEmpty()) {
+            logger.warn("No set of peers can satisfy the endorsement policy; proposals go to every peer");
+        }
+    }
+
+    /**
+     * @return MSP id of a principal met by any member, null for any other principal
+     */
+    private static String memberMsp(MspPrincipal.MSPPrincipal identity) throws InvalidProtocolBufferException {
+        if (identity.getPrincipalClassification() != MspPrincipal.MSPPrincipal.Classification.ROLE) {
+            return null;
+        }
+        MspPrincipal.MSPRole role = MspPrincipal.MSPRole.parseFrom(identity.getPrincipal());
+        return role.getRole() == MspPrincipal.MSPRole.MSPRoleType.MEMBER ? role.getMspIdentifier() : null;
+    }
+
+    /**
+     * @return minimal ways to satisfy the rule, fewest peers first; empty if it cannot be satisfied
+     */
+    static List<Map<String, Integer>> alternatives(Policies.SignaturePolicy rule, List<String> principals) {
+        if (rule.getTypeCase() == Policies.SignaturePolicy.TypeCase.SIGNED_BY) {
+            int index = rule.getSignedBy();
+            String msp = index < principals.size() ? principals.get(index) : null;
+            return msp == null ? Collections.emptyList()
+                    : Collections.singletonList(Collections.singletonMap(msp, 1));
+        }
+        if (rule.getTypeCase() != Policies.SignaturePolicy.TypeCase.N_OUT_OF) {
+            return Collections.emptyList();
+        }
+        List<List<Map<String, Integer>>> children = new ArrayList<>();
+        for (Policies.SignaturePolicy child : rule.getNOutOf().getPoliciesList()) {
+            List<Map<String, Integer>> childAlternatives = alternatives(child, principals);
+            if (!childAlternatives.isEmpty()) {
+                children.add(childAlternatives);
+            }
+        }
+        List<Map<String, Integer>> result = new ArrayList<>();
+        combine(children, 0, rule.getNOutOf().getN(), Collections.emptyMap(), result);
+        return minimal(result);
+    }
+
+    /**
+     * Add to result every way of satisfying n of the children from index on, each added to taken. Every
+     * signature counts once, so the peers the chosen children need add up.
+     */
+    private static void combine(List<List<Map<String, Integer>>> children, int index, int n,
+                                Map<String, Integer> taken, List<Map<String, Integer>> result) {
+        if (n <= 0) {
+            result.add(taken);
+            return;
+        }
+        if (children.size() - index < n || result.size() >= MAX_ALTERNATIVES * MAX_ALTERNATIVES) {
+            return;
+        }
+        for (Map<String, Integer> alternative : children.get(index)) {
+            Map<String, Integer> sum = new TreeMap<>(taken);
+            alternative.forEach((msp, count) -> sum.merge(msp, count, Integer::sum));
+            combine(children, index + 1, n - 1, sum, result);
+        }
+        combine(children, index + 1, n, taken, result);
+    }
+
+    /**
+     * @return the alternatives not needing at least as many peers of every MSP as another, fewest peers first
+     */
+    private static List<Map<String, Integer>> minimal(List<Map<String, Integer>> alternatives) {
+        alternatives.sort(Comparator.comparingInt(EndorserSelector::peersNeeded));
+        List<Map<String, Integer>> minimal = new ArrayList<>();
+        for (Map<String, Integer> alternative : alternatives) {
+            boolean dominated = false;
+            for (Map<String, Integer> kept : minimal) {
+                if (covers(alternative, kept)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                minimal.add(alternative);
+                if (minimal.size() == MAX_ALTERNATIVES) {
+                    break;
+                }
+            }
+        }
+        return minimal;
+    }
+
+    private static boolean covers(Map<String, Integer> alternative, Map<String, Integer> other) {
+        for (Map.Entry<String, Integer> need : other.entrySet()) {
+            if (alternative.getOrDefault(need.getKey(), 0) < need.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int peersNeeded(Map<String, Integer> alternative) {
+        int peers = 0;
+        for (int count : alternative.values()) {
+            peers += count;
+        }
+        return peers;
+    }
+
+    /**
+     * @param peers    peers of the chain
+     * @param excluded peers not to pick, e.g. ones that failed this proposal
+     * @return the cheapest peers satisfying the policy, or every peer not excluded if no alternative can be met
+     */
+    public Collection<Peer> select(Collection<Peer> peers, Set<Peer> excluded) {
+        long now = System.currentTimeMillis();
+        Map<String, List<Peer>> byMsp = new HashMap<>();
+        List<Peer> available = new ArrayList<>();
+        for (Peer peer : peers) {
+            if (excluded.contains(peer)) {
+                continue;
+            }
+            available.add(peer);
+            String msp = msps.get(peer);
+            if (msp != null) {
+                byMsp.computeIfAbsent(msp, m -> new ArrayList<>()).add(peer);
+            }
+        }
+        Map<Peer, Double> costs = new HashMap<>();
+        for (Peer peer : available) {
+            costs.put(peer, stats(peer).cost(now));
+        }
+        for (List<Peer> group : byMsp.values()) {
+            group.sort(Comparator.comparingDouble(costs::get));
+        }
+
+        List<Peer> best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (Map<String, Integer> alternative : alternatives) {
+            List<Peer> selected = new ArrayList<>();
+            double cost = 0;
+            for (Map.Entry<String, Integer> need : alternative.entrySet()) {
+                List<Peer> group = byMsp.getOrDefault(need.getKey(), Collections.emptyList());
+                if (group.size() < need.getValue()) {
+                    selected = null;
+                    break;
+                }
+                for (Peer peer : group.subList(0, need.getValue())) {
+                    selected.add(peer);
+                    // Endorsers answer in parallel, so the slowest one decides.
+                    cost = Math.max(cost, costs.get(peer));
+                }
+            }
+            if (selected != null && (best == null || selected.size() < best.size()
+                    || selected.size() == best.size() && cost < bestCost)) {
+                best = selected;
+                bestCost = cost;
+            }
+        }
+        return best != null ? best : available;
+    }
+
+    private PeerStats stats(Peer peer) {
+        return stats.computeIfAbsent(peer, p -> new PeerStats());
+    }
+
+    /**
+     * Count a proposal sent to the peers.
+     */
+    public void started(Collection<Peer> peers) {
+        for (Peer peer : peers) {
+            stats(peer).started();
+        }
+    }
+
+    /**
+     * Record the answer of a peer to a proposal counted by {@link #started}.
+     *
+     * @param latency milliseconds until the answer, negative if the proposal was never sent
+     * @param failed  whether the peer could not be reached or did not answer in time
+     */
+    public void finished(Peer peer, long latency, boolean failed) {
+        stats(peer).finished(latency, failed, System.currentTimeMillis());
+    }
+
+    private static final class PeerStats {
+        private int inFlight;
+        /** Moving average of answer latency in milliseconds; 0 until the first answer, so new peers get tried */
+        private double latency;
+        private int failures;
+        private long backoffUntil;
+
+        synchronized void started() {
+            inFlight++;
+        }
+
+        synchronized void finished(long sample, boolean failed, long now) {
+            inFlight--;
+            if (failed) {
+                failures++;
+                backoffUntil = now + Math.min(MAX_BACKOFF, MIN_BACKOFF << Math.min(failures - 1, 16));
+            } else if (sample >= 0) {
+                failures = 0;
+                latency = latency == 0 ? sample : latency + LATENCY_WEIGHT * (sample - latency);
+            }
+        }
+
+        /**
+         * @return expected wait for an answer, weighted by the proposals already waiting; peers backing off
+         * come after every healthy one
+         */
+        synchronized double cost(long now) {
+            double cost = (latency + 1) * (inFlight + 1);
+            return now < backoffUntil ? cost + MAX_BACKOFF * 1000.0 : cost;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package blockchain;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import org.apache.commons.codec.binary.Hex;
 import org.hyperledger.fabric.sdk.*;
+import org.hyperledger.fabric.sdk.exception.InvalidArgumentException;
+import org.hyperledger.fabric.sdk.exception.ProposalException;
 import org.hyperledger.fabric.sdk.exception.TransactionEventException;
 import org.hyperledger.fabric.sdk.security.CryptoSuite;
 import org.hyperledger.fabric_ca.sdk.HFCAClient;
@@ -12,19 +15,37 @@ import java.math.BigDecimal;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class Fabric {
     private static final SampleConfig SAMPLE_CONFIG = SampleConfig.getConfig();
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "chaincode-timeouts");
+        thread.setDaemon(true);
+        return thread;
+    });
     private static final String TEST_ADMIN_NAME = "admin";
     private static final String TESTUSER_1_NAME = "user1";
     private static final String TEST_FIXTURES_PATH = "network";
+    private static final String ENDORSEMENT_POLICY_FILE = TEST_FIXTURES_PATH + "/chaincodeendorsementpolicy.yaml";
+    /** Times a proposal is sent again to other peers when endorsers cannot be reached */
+    private static final int ENDORSE_RETRIES = 2;
     private static final String CHAIN_CODE_SRC_LOCATION = "chaincode";
     private static final String CHAIN_CODE_VERSION = "1";
     private static final String CHAIN_NAME = "luxoft";
+    /** Snapshot of the chain's configuration block, so a restart does not wait on the orderer for it */
+    private static final String CHAIN_SNAPSHOT_FILE = "chain_%s.snapshot";
     private final String CHAIN_CODE_NAME;
     private final String CHAIN_CODE_PATH;
     private final String CHAIN_CODE_INIT_ARG[];
@@ -33,6 +54,10 @@ public class Fabric {
     private final HFClient client = HFClient.createNewInstance();
     String testTxID = null;  // save the CC invoke TxID and use in queries
     private Collection<SampleOrg> testSampleOrgs;
+    /** Turns queries over the peers */
+    private final AtomicInteger nextQueryPeer = new AtomicInteger();
+    /** Null until the chain is set up, and when the policy cannot be read */
+    private volatile EndorserSelector endorsers;
 
     public Fabric(String chainCodeName, String chaincodePath, String[] chaincodeInitArg) {
         CHAIN_CODE_NAME = chainCodeName;
@@ -235,7 +260,7 @@ public class Fabric {
               See README.md Chaincode endorsement policies section for more details.
             */
         ChaincodeEndorsementPolicy chaincodeEndorsementPolicy = new ChaincodeEndorsementPolicy();
-        chaincodeEndorsementPolicy.fromYamlFile(new File(TEST_FIXTURES_PATH + "/chaincodeendorsementpolicy.yaml"));
+        chaincodeEndorsementPolicy.fromYamlFile(new File(ENDORSEMENT_POLICY_FILE));
         instantiateProposalRequest.setChaincodeEndorsementPolicy(chaincodeEndorsementPolicy);
 
         out("Sending instantiateProposalRequest to all peers");
@@ -287,6 +312,7 @@ public class Fabric {
         Chain chain = constructChain(CHAIN_NAME, sampleOrg, chainStarted == null);
         if (chainStarted == null)
             sampleStore.setValue("isInited_" + CHAIN_NAME, "true");
+        endorsers = newEndorserSelector(sampleOrg);
 
         String chaincodeIsInited = sampleStore.getValue("isInited_" + CHAIN_CODE_NAME + "_" + CHAIN_CODE_VERSION);
         if (chaincodeIsInited == null) {
@@ -297,6 +323,29 @@ public class Fabric {
         return chain;
     }
 
+    /**
+     * @return selector over the organisation's peers for the policy the chaincode is instantiated with, or null
+     * to send proposals to every peer
+     */
+    private EndorserSelector newEndorserSelector(SampleOrg sampleOrg) {
+        try {
+            ChaincodeEndorsementPolicy chaincodeEndorsementPolicy = new ChaincodeEndorsementPolicy();
+            chaincodeEndorsementPolicy.fromYamlFile(new File(ENDORSEMENT_POLICY_FILE));
+            Map<Peer, String> msps = new HashMap<>();
+            for (Peer peer : sampleOrg.getPeers()) {
+                msps.put(peer, sampleOrg.getMSPID());
+            }
+            return new EndorserSelector(chaincodeEndorsementPolicy, msps);
+        } catch (Exception e) {
+            out("Cannot read the endorsement policy, proposals go to every peer: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    public String getChainCodeName() {
+        return CHAIN_CODE_NAME;
+    }
+
     public SampleOrg getConfiguredOrganisationParameters() {
         return SAMPLE_CONFIG.getIntegrationTestsSampleOrg("peerOrg1");
     }
@@ -323,53 +372,374 @@ public class Fabric {
     }
 
     public String invokeChaincode(Chain chain, String[] arguments) throws Exception {
-        Collection<ProposalResponse> successful = new LinkedList<>();
-        Collection<ProposalResponse> failed = new LinkedList<>();
+        return await(invokeChaincodeAsync(chain, arguments));
+    }
 
-        // client.setUserContext(sampleOrg.getUser(TESTUSER_1_NAME));
-        //       client.setUserContext(sampleOrg.getAdmin());
+    /**
+     * Endorse a chaincode invocation and hand it to the orderer, without waiting for the commit.
+     *
+     * @param listener told about every state of the transaction, may be null
+     * @return once the orderer accepted the transaction
+     */
+    public SubmittedTransaction submitChaincode(Chain chain, String[] arguments,
+                                                TransactionState.Listener listener) throws Exception {
+        return await(submitChaincodeAsync(chain, arguments, listener));
+    }
 
-        ///////////////
-        /// Send transaction proposal to all peers
+    /**
+     * Invoke a chaincode function and wait for the commit of its transaction, without blocking the caller.
+     *
+     * @return completed with the chaincode response payload once the transaction is committed valid; fails with
+     * an {@link InvocationException}
+     */
+    public CompletableFuture<String> invokeChaincodeAsync(Chain chain, String[] arguments) {
+        return submitChaincodeAsync(chain, arguments, null).thenCompose(transaction ->
+                awaitCommit(transaction).thenApply(event -> transaction.getPayload()));
+    }
+
+    /**
+     * Wait for the commit of a submitted transaction for at most the transaction wait time.
+     *
+     * @return completed once the transaction is committed valid; fails with an {@link InvocationException},
+     * a timeout one if the commit was not seen in time
+     */
+    public static CompletableFuture<BlockEvent.TransactionEvent> awaitCommit(SubmittedTransaction transaction) {
+        return within(transaction.getCommit(), SAMPLE_CONFIG.getTransactionWaitTime(), InvocationException.Stage.COMMIT,
+                transaction.getTransactionId()).handle((event, cause) -> {
+            if (cause != null) {
+                throw toInvocationException(cause, InvocationException.Stage.COMMIT, transaction.getTransactionId());
+            }
+            return event;
+        });
+    }
+
+    /**
+     * Endorse a chaincode invocation on every peer of the chain, check the endorsements and hand the transaction
+     * to the orderer. Each stage runs on SDK and gRPC threads and has its own timeout, so no thread waits for the
+     * chain.
+     *
+     * @param listener told about every state of the transaction, may be null
+     * @return completed once the orderer accepted the transaction; fails with an {@link InvocationException}
+     */
+    public CompletableFuture<SubmittedTransaction> submitChaincodeAsync(Chain chain, String[] arguments,
+                                                                        TransactionState.Listener listener) {
         TransactionProposalRequest transactionProposalRequest = client.newTransactionProposalRequest();
         transactionProposalRequest.setChaincodeID(chainCodeID);
         transactionProposalRequest.setFcn("invoke");
         transactionProposalRequest.setArgs(arguments);
+        transactionProposalRequest.setProposalWaitTime(SAMPLE_CONFIG.getProposalWaitTime());
 
         Map<String, byte[]> tm2 = new HashMap<>();
         tm2.put("HyperLedgerFabric", "TransactionProposalRequest:JavaSDK".getBytes(UTF_8));
         tm2.put("method", "TransactionProposalRequest".getBytes(UTF_8));
         tm2.put("result", ":)".getBytes(UTF_8));  /// This should be returned see chaincode.
-        transactionProposalRequest.setTransientMap(tm2);
+        try {
+            transactionProposalRequest.setTransientMap(tm2);
+        } catch (InvalidArgumentException e) {
+            CompletableFuture<SubmittedTransaction> failed = new CompletableFuture<>();
+            failed.completeExceptionally(toInvocationException(e, InvocationException.Stage.ENDORSE, null));
+            return failed;
+        }
 
-        Collection<ProposalResponse> transactionPropResp = chain.sendTransactionProposal(transactionProposalRequest, chain.getPeers());
-        for (ProposalResponse response : transactionPropResp) {
-            if (response.getStatus() == ProposalResponse.Status.SUCCESS) {
-                out("Successful transaction proposal response Txid: %s from peer %s", response.getTransactionID(), response.getPeer().getName());
-                successful.add(response);
+        return endorse(chain, transactionProposalRequest, Collections.emptySet(), ENDORSE_RETRIES).thenCompose(responses -> {
+            String transactionId = responses.iterator().next().getTransactionID();
+            notify(listener, transactionId, TransactionState.SUBMITTED);
+            String payload;
+            try {
+                payload = verify(transactionId, responses);
+            } catch (InvocationException e) {
+                notify(listener, transactionId, TransactionState.REJECTED);
+                throw e;
+            }
+            notify(listener, transactionId, TransactionState.ENDORSED);
+
+            CompletableFuture<CompletableFuture<BlockEvent.TransactionEvent>> ordered =
+                    chain.sendTransactionAsync(responses, chain.getOrderers());
+            return within(ordered, SAMPLE_CONFIG.getOrderWaitTime(),
+                    InvocationException.Stage.ORDER, transactionId).handle((commit, orderFailure) -> {
+                if (orderFailure != null) {
+                    InvocationException e = toInvocationException(orderFailure, InvocationException.Stage.ORDER,
+                            transactionId);
+                    // An orderer may still accept a transaction it did not answer for in time, but nobody
+                    // waits for its commit any more.
+                    ordered.thenAccept(late -> late.cancel(false));
+                    notify(listener, transactionId, e.isTimeout() ? TransactionState.TIMED_OUT : TransactionState.REJECTED);
+                    throw e;
+                }
+                notify(listener, transactionId, TransactionState.ORDERED);
+                expire(commit, SAMPLE_CONFIG.getTransactionWaitTime(), transactionId);
+                if (listener != null) {
+                    commit.whenComplete((event, commitFailure) -> listener.stateChanged(transactionId,
+                            commitFailure == null ? TransactionState.COMMITTED_VALID
+                                    : isTimeout(commitFailure) ? TransactionState.TIMED_OUT
+                                    : TransactionState.COMMITTED_INVALID));
+                }
+                return new SubmittedTransaction(transactionId, payload, commit);
+            });
+        });
+    }
+
+    /**
+     * Evaluate a chaincode function without a transaction: the proposal goes to as many peers as QueryPeers
+     * asks for and never to the orderer, so nothing is written to the ledger.
+     *
+     * @return chaincode response payload
+     */
+    public String queryChaincode(Chain chain, String[] arguments) throws Exception {
+        return queryChaincode(chain, arguments, SAMPLE_CONFIG.getQueryPeers());
+    }
+
+    /**
+     * Evaluate a chaincode function on some peers of the chain, taking the peers in turn from one query to the
+     * next. A peer that cannot be reached or does not answer in time is replaced by the next one; an error of the
+     * chaincode itself fails the query.
+     *
+     * @param peers number of peers that must answer, and answer alike
+     * @return chaincode response payload
+     * @throws InvocationException ENDORSE if not enough peers answered or the chaincode failed, VERIFY if the
+     *                             peers disagree
+     */
+    public String queryChaincode(Chain chain, String[] arguments, int peers) throws Exception {
+        List<Peer> candidates = new ArrayList<>(chain.getPeers());
+        if (peers < 1 || peers > candidates.size()) {
+            throw new IllegalArgumentException(format("Cannot query %d of %d peers", peers, candidates.size()));
+        }
+        int first = Math.floorMod(nextQueryPeer.getAndIncrement(), candidates.size());
+        String payload = null;
+        Peer answeredBy = null;
+        int answered = 0;
+        String lastFailure = null;
+        Exception lastError = null;
+        for (int i = 0; i < candidates.size() && answered < peers; i++) {
+            Peer peer = candidates.get((first + i) % candidates.size());
+            QueryByChaincodeRequest queryByChaincodeRequest = client.newQueryProposalRequest();
+            queryByChaincodeRequest.setChaincodeID(chainCodeID);
+            queryByChaincodeRequest.setFcn("invoke");
+            queryByChaincodeRequest.setArgs(arguments);
+            queryByChaincodeRequest.setProposalWaitTime(SAMPLE_CONFIG.getProposalWaitTime());
+
+            ProposalResponse response;
+            try {
+                response = chain.queryByChaincode(queryByChaincodeRequest, Collections.singletonList(peer))
+                        .iterator().next();
+            } catch (ProposalException e) {
+                lastFailure = e.getMessage();
+                lastError = e;
+                continue;
+            }
+            if (response.getStatus() != ProposalResponse.Status.SUCCESS && response.getProposalResponse() != null) {
+                // The peer ran the chaincode; another peer would fail the same way.
+                throw new InvocationException(InvocationException.Stage.ENDORSE, response.getTransactionID(), false,
+                        "Query failed on peer " + peer.getName() + ": " + response.getMessage(), null);
+            }
+            if (response.getStatus() != ProposalResponse.Status.SUCCESS) {
+                lastFailure = response.getMessage();
+                continue;
+            }
+            if (!response.isVerified()) {
+                lastFailure = "Answer of peer " + peer.getName() + " failed verification";
+                continue;
+            }
+            String answer = response.getProposalResponse().getResponse().getPayload().toStringUtf8();
+            if (answeredBy == null) {
+                payload = answer;
+                answeredBy = peer;
+            } else if (!payload.equals(answer)) {
+                throw new InvocationException(InvocationException.Stage.VERIFY, response.getTransactionID(), false,
+                        "Peers " + answeredBy.getName() + " and " + peer.getName() + " answered the query differently",
+                        null);
+            }
+            answered++;
+        }
+        if (answered < peers) {
+            throw new InvocationException(InvocationException.Stage.ENDORSE, null, false,
+                    format("Query answered by %d of %d peers: %s", answered, peers, lastFailure), lastError);
+        }
+        return payload;
+    }
+
+    /**
+     * Send the proposal to the endorsers the policy needs, or to every peer without a selector. When some of
+     * the endorsers cannot be reached the proposal is sent again, to other peers in their place.
+     *
+     * @param excluded peers not to send to
+     */
+    private CompletableFuture<Collection<ProposalResponse>> endorse(Chain chain, TransactionProposalRequest request,
+                                                                   Set<Peer> excluded, int retries) {
+        EndorserSelector selector = endorsers;
+        Collection<Peer> peers = selector == null ? chain.getPeers() : selector.select(chain.getPeers(), excluded);
+        if (selector != null) {
+            selector.started(peers);
+        }
+        long start = System.currentTimeMillis();
+        // Each peer is recorded once: when its response arrives, or as failed if the round ends without it.
+        Set<Peer> recorded = ConcurrentHashMap.newKeySet();
+        Consumer<ProposalResponse> onResponse = selector == null ? null : response -> {
+            if (recorded.add(response.getPeer())) {
+                // Without a proposal response the peer never answered; a refusal is an answer.
+                selector.finished(response.getPeer(), System.currentTimeMillis() - start,
+                        response.getProposalResponse() == null);
+            }
+        };
+        CompletableFuture<Collection<ProposalResponse>> proposal =
+                chain.sendTransactionProposalAsync(request, peers, onResponse);
+        // Peers time out on their own; the margin covers signing and verification.
+        return within(proposal, 2L * SAMPLE_CONFIG.getProposalWaitTime(),
+                InvocationException.Stage.ENDORSE, null).handle((responses, cause) -> {
+            if (cause != null) {
+                InvocationException e = toInvocationException(cause, InvocationException.Stage.ENDORSE, null);
+                if (selector != null) {
+                    for (Peer peer : peers) {
+                        if (recorded.add(peer)) {
+                            // Timed out without an answer, or never sent.
+                            selector.finished(peer, -1, e.isTimeout());
+                        }
+                    }
+                }
+                throw e;
+            }
+            return responses;
+        }).thenCompose(responses -> {
+            if (selector == null) {
+                return CompletableFuture.completedFuture(responses);
+            }
+            Set<Peer> unreachable = new HashSet<>();
+            for (ProposalResponse response : responses) {
+                if (response.getProposalResponse() == null) {
+                    unreachable.add(response.getPeer());
+                }
+            }
+            Set<Peer> nextExcluded = new HashSet<>(excluded);
+            nextExcluded.addAll(unreachable);
+            if (unreachable.isEmpty() || retries == 0 || nextExcluded.containsAll(chain.getPeers())) {
+                return CompletableFuture.completedFuture(responses);
+            }
+            out("Endorsers %s did not answer, sending the proposal to others", unreachable);
+            return endorse(chain, request, nextExcluded, retries - 1);
+        });
+    }
+
+    /**
+     * Check every peer endorsed the proposal, their signatures verified and they agree on the result.
+     *
+     * @return chaincode response payload of the endorsements
+     */
+    private static String verify(String transactionId, Collection<ProposalResponse> responses) {
+        ProposalResponse first = null;
+        int failed = 0;
+        ProposalResponse firstFailed = null;
+        for (ProposalResponse response : responses) {
+            if (response.getStatus() != ProposalResponse.Status.SUCCESS) {
+                if (firstFailed == null) {
+                    firstFailed = response;
+                }
+                failed++;
+            } else if (first == null) {
+                first = response;
+            }
+        }
+        out("Received %d transaction proposal responses. Successful: %d . Failed: %d",
+                responses.size(), responses.size() - failed, failed);
+        if (firstFailed != null) {
+            throw new InvocationException(InvocationException.Stage.ENDORSE, transactionId, false,
+                    "Not enough endorsers for invoke:" + failed + " endorser error: " + firstFailed.getMessage()
+                            + ". Was verified: " + firstFailed.isVerified(), null);
+        }
+        for (ProposalResponse response : responses) {
+            if (!response.isVerified()) {
+                throw new InvocationException(InvocationException.Stage.VERIFY, transactionId, false,
+                        "Endorsement of peer " + response.getPeer().getName() + " failed verification", null);
+            }
+            if (!response.getProposalResponse().getPayload().equals(first.getProposalResponse().getPayload())) {
+                throw new InvocationException(InvocationException.Stage.VERIFY, transactionId, false,
+                        "Peers " + first.getPeer().getName() + " and " + response.getPeer().getName()
+                                + " endorsed different results", null);
+            }
+        }
+        try {
+            byte[] x = first.getChainCodeActionResponsePayload();
+            return x == null ? null : new String(x, UTF_8);
+        } catch (InvalidProtocolBufferException e) {
+            throw new InvocationException(InvocationException.Stage.VERIFY, transactionId, false,
+                    "Endorsement of peer " + first.getPeer().getName() + " is malformed", e);
+        }
+    }
+
+    /**
+     * @return the future, failed with a timeout InvocationException if it is not done after timeout milliseconds
+     */
+    private static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeout,
+                                                   InvocationException.Stage stage, String transactionId) {
+        if (future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = TIMEOUTS.schedule(() -> result.completeExceptionally(new InvocationException(stage,
+                transactionId, true, format("%s stage did not finish in %d ms", stage, timeout), null)),
+                timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, cause) -> {
+            timer.cancel(false);
+            if (cause != null) {
+                result.completeExceptionally(cause);
             } else {
-                failed.add(response);
+                result.complete(value);
             }
+        });
+        return result;
+    }
+
+    /**
+     * Fail the commit of a transaction with a COMMIT timeout if its event has not come after timeout
+     * milliseconds. Failing the future the chain returned stops the chain listening for the transaction.
+     */
+    private static void expire(CompletableFuture<BlockEvent.TransactionEvent> commit, long timeout,
+                               String transactionId) {
+        if (commit.isDone()) {
+            return;
         }
-        out("Received %d transaction proposal responses. Successful+verified: %d . Failed: %d",
-                transactionPropResp.size(), successful.size(), failed.size());
-        if (failed.size() > 0) {
-            ProposalResponse firstTransactionProposalResponse = failed.iterator().next();
-            fail("Not enough endorsers for invoke:" + failed.size() + " endorser error: " +
-                    firstTransactionProposalResponse.getMessage() +
-                    ". Was verified: " + firstTransactionProposalResponse.isVerified());
+        ScheduledFuture<?> timer = TIMEOUTS.schedule(() -> commit.completeExceptionally(new InvocationException(
+                InvocationException.Stage.COMMIT, transactionId, true,
+                format("%s stage did not finish in %d ms", InvocationException.Stage.COMMIT, timeout), null)),
+                timeout, TimeUnit.MILLISECONDS);
+        commit.whenComplete((event, cause) -> timer.cancel(false));
+    }
+
+    private static boolean isTimeout(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
         }
-        out("Successfully received transaction proposal responses.");
+        return cause instanceof InvocationException && ((InvocationException) cause).isTimeout();
+    }
+
+    private static InvocationException toInvocationException(Throwable cause, InvocationException.Stage stage,
+                                                             String transactionId) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof InvocationException) {
+            return (InvocationException) cause;
+        }
+        return new InvocationException(stage, transactionId, false, cause.getMessage(), cause);
+    }
 
-        ProposalResponse resp = transactionPropResp.iterator().next();
-        byte[] x = resp.getChainCodeActionResponsePayload();
-        String resultAsString = null;
-        if (x != null) {
-            resultAsString = new String(x, "UTF-8");
+    /**
+     * Wait for a future, rethrowing its failure.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
         }
+    }
 
-        BlockEvent.TransactionEvent transactionEvent = chain.sendTransaction(successful).get(SAMPLE_CONFIG.getTransactionWaitTime(), TimeUnit.SECONDS);
-        return resultAsString;
+    private static void notify(TransactionState.Listener listener, String transactionId, TransactionState state) {
+        if (listener != null) {
+            listener.stateChanged(transactionId, state);
+        }
     }
 
     private void runChain(Chain chain, SampleOrg sampleOrg) {
@@ -602,7 +972,11 @@ public class Fabric {
             chain.addEventHub(eventHub);
         }
 
-        chain.initialize();
+        File configSnapshot = new File(String.format(CHAIN_SNAPSHOT_FILE, name));
+        if (newChain && configSnapshot.delete()) {
+            out("Removed config snapshot of a previous chain %s", name);
+        }
+        chain.initialize(configSnapshot);
 
         out("Finished initialization chain %s", name);
 
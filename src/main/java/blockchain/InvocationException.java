@@ -0,0 +1,47 @@
+package blockchain;
+
+/**
+ * Failure of a chaincode invocation through {@link Fabric#submitChaincodeAsync}, with the stage it failed in.
+ */
+public class InvocationException extends RuntimeException {
+
+    public enum Stage {
+        /** Sending the proposal or a peer refusing to endorse it */
+        ENDORSE,
+        /** Endorsements not verified or not agreeing on the result */
+        VERIFY,
+        /** No orderer accepted the transaction */
+        ORDER,
+        /** Committed invalid, or no commit event */
+        COMMIT
+    }
+
+    private final Stage stage;
+    private final String transactionId;
+    private final boolean timeout;
+
+    public InvocationException(Stage stage, String transactionId, boolean timeout, String message, Throwable cause) {
+        super(message, cause);
+        this.stage = stage;
+        this.transactionId = transactionId;
+        this.timeout = timeout;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * @return id of the transaction, null if the proposal was never sent
+     */
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * @return whether the stage did not finish in time; an ORDER or COMMIT timeout may still commit later
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
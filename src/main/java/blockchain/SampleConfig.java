@@ -49,6 +49,9 @@ public class SampleConfig {
     private static final String GOSSIPWAITTIME = PROPBASE + "GossipWaitTime";
     private static final String INVOKEWAITTIME = PROPBASE + "InvokeWaitTime";
     private static final String DEPLOYWAITTIME = PROPBASE + "DeployWaitTime";
+    private static final String PROPOSALWAITTIME = PROPBASE + "ProposalWaitTime";
+    private static final String ORDERWAITTIME = PROPBASE + "OrderWaitTime";
+    private static final String QUERYPEERS = PROPBASE + "QueryPeers";
 
     private static final String INTEGRATIONTESTS_ORG = PROPBASE + "integrationTests.org.";
     private static final Pattern orgPat = Pattern.compile("^" + Pattern.quote(INTEGRATIONTESTS_ORG) + "([^\\.]+)\\.mspid$");
@@ -84,6 +87,9 @@ public class SampleConfig {
             defaultProperty(GOSSIPWAITTIME, "5000");
             defaultProperty(INVOKEWAITTIME, "100000");
             defaultProperty(DEPLOYWAITTIME, "120000");
+            defaultProperty(PROPOSALWAITTIME, "20000");
+            defaultProperty(ORDERWAITTIME, "30000");
+            defaultProperty(QUERYPEERS, "1");
 
             //////
             defaultProperty(INTEGRATIONTESTS_ORG + "peerOrg1.mspid", "Org1MSP");
@@ -248,6 +254,27 @@ public class SampleConfig {
         return Integer.parseInt(getProperty(INVOKEWAITTIME));
     }
 
+    /**
+     * @return milliseconds a peer has to answer a transaction proposal
+     */
+    public int getProposalWaitTime() {
+        return Integer.parseInt(getProperty(PROPOSALWAITTIME));
+    }
+
+    /**
+     * @return milliseconds the orderers have to accept a transaction
+     */
+    public int getOrderWaitTime() {
+        return Integer.parseInt(getProperty(ORDERWAITTIME));
+    }
+
+    /**
+     * @return peers a query is sent to; more than one compares their answers
+     */
+    public int getQueryPeers() {
+        return Integer.parseInt(getProperty(QUERYPEERS));
+    }
+
     public int getDeployWaitTime() {
         return Integer.parseInt(getProperty(DEPLOYWAITTIME));
     }
@@ -22,6 +22,12 @@ import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
 import org.hyperledger.fabric.sdk.Enrollment;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
@@ -30,9 +36,19 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A local file-based key value store.
+ * <p>
+ * Values are served from memory. Every change is appended to the file as a properties entry, so the file loads
+ * with {@link Properties#load} and later entries win; stores written by earlier versions read unchanged. Writers
+ * waiting for their change to be synced share one fsync. Once most of the file is overwritten entries it is
+ * compacted in the background.
  */
 public class SampleStore {
 
@@ -40,13 +56,78 @@ public class SampleStore {
         Security.addProvider(new BouncyCastleProvider());
     }
 
-    private final Map<String, SampleUser> members = new HashMap<>();
-    private String file;
+    /** Files smaller than this are never compacted */
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+    private static final ExecutorService COMPACTION = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "samplestore-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, SampleUser> members = new ConcurrentHashMap<>();
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final Path file;
     private Log logger = LogFactory.getLog(SampleStore.class);
 
+    /** Guards the changes not yet written, in the order they were made, and the sizes below */
+    private final Object appendLock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final Map<String, Integer> entrySizes = new HashMap<>();
+    private long appendedSeq;
+    private long liveBytes;
+
+    /** Held while writing to the file; whoever holds it syncs the changes of every writer waiting */
+    private final Object syncLock = new Object();
+    private FileChannel channel;
+    private volatile long syncedSeq;
+    private volatile long fileBytes;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
     public SampleStore(File file) {
 
-        this.file = file.getAbsolutePath();
+        this.file = file.getAbsoluteFile().toPath();
+        load();
+    }
+
+    /**
+     * Read the file into memory. A crash while appending may leave a partial last entry; it was never
+     * acknowledged, so it is cut off.
+     */
+    private void load() {
+        byte[] content = new byte[0];
+        try {
+            if (Files.exists(file)) {
+                content = Files.readAllBytes(file);
+            } else {
+                logger.warn(String.format("Could not find the file \"%s\"", file));
+            }
+            int length = content.length;
+            while (length > 0 && content[length - 1] != '\n') {
+                length--;
+            }
+            if (length < content.length) {
+                logger.warn(String.format("Dropping %d bytes of a partial entry at the end of \"%s\"",
+                        content.length - length, file));
+            }
+
+            Properties properties = new Properties();
+            properties.load(new ByteArrayInputStream(content, 0, length));
+            for (String name : properties.stringPropertyNames()) {
+                String value = properties.getProperty(name);
+                values.put(name, value);
+                int size = encode(name, value).length;
+                entrySizes.put(name, size);
+                liveBytes += size;
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.truncate(length);
+            channel.position(length);
+            fileBytes = length;
+        } catch (IOException e) {
+            logger.warn(String.format("Could not load keyvalue store from file \"%s\", reason:%s",
+                    file, e.getMessage()));
+        }
     }
 
     static PrivateKey getPrivateKeyFromBytes(byte[] data) throws IOException, NoSuchProviderException, NoSuchAlgorithmException, InvalidKeySpecException {
@@ -67,43 +148,139 @@ public class SampleStore {
      * @return value associated with the name
      */
     public String getValue(String name) {
-        Properties properties = loadProperties();
-        return properties.getProperty(name);
+        return values.get(name);
     }
 
-    private Properties loadProperties() {
-        Properties properties = new Properties();
-        try (InputStream input = new FileInputStream(file)) {
-            properties.load(input);
-            input.close();
-        } catch (FileNotFoundException e) {
-            logger.warn(String.format("Could not find the file \"%s\"", file));
+    /**
+     * Set the value associated with name. Returns once the change is synced to the file.
+     *
+     * @param name  The name of the parameter
+     * @param value Value for the parameter
+     */
+    public void setValue(String name, String value) {
+        byte[] entry = encode(name, value);
+        long seq;
+        synchronized (appendLock) {
+            values.put(name, value);
+            pending.write(entry, 0, entry.length);
+            Integer previous = entrySizes.put(name, entry.length);
+            liveBytes += entry.length - (previous == null ? 0 : previous);
+            seq = ++appendedSeq;
+        }
+        try {
+            sync(seq);
         } catch (IOException e) {
-            logger.warn(String.format("Could not load keyvalue store from file \"%s\", reason:%s",
-                    file, e.getMessage()));
+            logger.warn(String.format("Could not save the keyvalue store, reason:%s", e.getMessage()));
         }
+        scheduleCompaction();
+    }
 
-        return properties;
+    /**
+     * Write and fsync the pending changes unless another writer already synced change seq.
+     */
+    private void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            byte[] batch;
+            long batchSeq;
+            synchronized (appendLock) {
+                batch = pending.toByteArray();
+                pending.reset();
+                batchSeq = appendedSeq;
+            }
+            if (channel == null) {
+                throw new IOException(String.format("file \"%s\" could not be opened", file));
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            fileBytes += batch.length;
+            syncedSeq = batchSeq;
+        }
+    }
+
+    private void scheduleCompaction() {
+        long live;
+        synchronized (appendLock) {
+            live = liveBytes;
+        }
+        if (fileBytes > COMPACT_MIN_BYTES && fileBytes > 2 * live && compacting.compareAndSet(false, true)) {
+            COMPACTION.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    logger.warn(String.format("Could not compact keyvalue store \"%s\", reason:%s", file, e.getMessage()));
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
     }
 
     /**
-     * Set the value associated with name.
-     *
-     * @param name  The name of the parameter
-     * @param value Value for the parameter
+     * Replace the file by one holding only the current values. Reads and writes carry on meanwhile; writers wait
+     * for the new file to be synced instead of syncing their changes themselves.
      */
-    public void setValue(String name, String value) {
-        Properties properties = loadProperties();
-        try (
-                OutputStream output = new FileOutputStream(file)
-        ) {
-            properties.setProperty(name, value);
-            properties.store(output, "");
-            output.close();
+    void compact() throws IOException {
+        synchronized (syncLock) {
+            Map<String, String> snapshot;
+            long seq;
+            synchronized (appendLock) {
+                snapshot = new TreeMap<>(values);
+                pending.reset();
+                seq = appendedSeq;
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            long length = 0;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, String> value : snapshot.entrySet()) {
+                    ByteBuffer buffer = ByteBuffer.wrap(encode(value.getKey(), value.getValue()));
+                    while (buffer.hasRemaining()) {
+                        length += out.write(buffer);
+                    }
+                }
+                out.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
+            FileChannel compacted = FileChannel.open(file, StandardOpenOption.WRITE);
+            compacted.position(length);
+            if (channel != null) {
+                channel.close();
+            }
+            channel = compacted;
+            logger.debug(String.format("Compacted keyvalue store \"%s\" from %d to %d bytes", file, fileBytes, length));
+            fileBytes = length;
+            syncedSeq = seq;
+        }
+    }
+
+    /**
+     * @return the entry as {@link Properties#store} writes it, without the date comment
+     */
+    private static byte[] encode(String name, String value) {
+        Properties properties = new Properties();
+        properties.setProperty(name, value);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try {
+            properties.store(output, null);
         } catch (IOException e) {
-            logger.warn(String.format("Could not save the keyvalue store, reason:%s", e.getMessage()));
+            throw new UncheckedIOException(e);
         }
+        byte[] stored = output.toByteArray();
+        int start = 0;
+        while (stored[start] == '#') {
+            while (stored[start++] != '\n') {
+            }
+        }
+        byte[] entry = new byte[stored.length - start];
+        System.arraycopy(stored, start, entry, 0, entry.length);
+        return entry;
     }
 
     /**
@@ -114,7 +291,8 @@ public class SampleStore {
     public SampleUser getMember(String name, String org) {
 
         // Try to get the SampleUser state from the cache
-        SampleUser sampleUser = members.get(SampleUser.toKeyValStoreName(name, org));
+        String key = SampleUser.toKeyValStoreName(name, org);
+        SampleUser sampleUser = members.get(key);
         if (null != sampleUser) {
             return sampleUser;
         }
@@ -122,7 +300,8 @@ public class SampleStore {
         // Create the SampleUser and try to restore it's state from the key value store (if found).
         sampleUser = new SampleUser(name, org, this);
 
-        return sampleUser;
+        SampleUser cached = members.putIfAbsent(key, sampleUser);
+        return cached != null ? cached : sampleUser;
 
     }
 
@@ -136,7 +315,8 @@ public class SampleStore {
 
         try {
             // Try to get the SampleUser state from the cache
-            SampleUser sampleUser = members.get(SampleUser.toKeyValStoreName(name, org));
+            String key = SampleUser.toKeyValStoreName(name, org);
+            SampleUser sampleUser = members.get(key);
             if (null != sampleUser) {
                 return sampleUser;
             }
@@ -154,7 +334,8 @@ public class SampleStore {
 
             sampleUser.saveState();
 
-            return sampleUser;
+            SampleUser cached = members.putIfAbsent(key, sampleUser);
+            return cached != null ? cached : sampleUser;
         } catch (IOException e) {
             e.printStackTrace();
             throw e;
@@ -0,0 +1,40 @@
+package blockchain;
+
+import org.hyperledger.fabric.sdk.BlockEvent;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transaction the orderer has accepted, with the future of its commit.
+ */
+public class SubmittedTransaction {
+    private final String transactionId;
+    private final String payload;
+    private final CompletableFuture<BlockEvent.TransactionEvent> commit;
+
+    SubmittedTransaction(String transactionId, String payload, CompletableFuture<BlockEvent.TransactionEvent> commit) {
+        this.transactionId = transactionId;
+        this.payload = payload;
+        this.commit = commit;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * @return chaincode response payload of the endorsement
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * @return completed when the transaction is committed valid; fails with a TransactionEventException
+     * when it is committed invalid, or with a timeout {@link InvocationException} when no commit event came
+     * within the transaction wait time
+     */
+    public CompletableFuture<BlockEvent.TransactionEvent> getCommit() {
+        return commit;
+    }
+}
@@ -0,0 +1,27 @@
+package blockchain;
+
+/**
+ * Lifecycle of a transaction submitted through {@link Fabric#submitChaincode}.
+ */
+public enum TransactionState {
+    /** Proposal responses received; the transaction id is known */
+    SUBMITTED,
+    /** Every peer endorsed the proposal */
+    ENDORSED,
+    /** The orderer accepted the envelope */
+    ORDERED,
+    COMMITTED_VALID,
+    /** Committed in a block but marked invalid, e.g. on an MVCC conflict */
+    COMMITTED_INVALID,
+    /** No commit event arrived in time; the transaction may still commit later */
+    TIMED_OUT,
+    /** Endorsement failed or the orderer refused the envelope */
+    REJECTED;
+
+    public interface Listener {
+        /**
+         * Called from the submitting thread and from chain event threads; must not block.
+         */
+        void stateChanged(String transactionId, TransactionState state);
+    }
+}
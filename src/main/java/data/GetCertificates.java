@@ -1,13 +1,15 @@
 package data;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created by flowmaster on 27.05.17.
  */
 public class GetCertificates {
-    private List<CertificateItem> certificates;
+    private List<CertificateItem> certificates = new ArrayList<>();
+    /** Cursor of the next page when the list was paged and more certificates follow */
+    private String next_cursor;
 
     public List<CertificateItem> getCertificates() {
         return certificates;
@@ -17,10 +19,21 @@ public class GetCertificates {
         this.certificates = certificates;
     }
 
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    public void setNext_cursor(String next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+
     public static class CertificateItem{
         private String cert_img;
         private String cert_title;
 
+        public CertificateItem() {
+        }
+
         public CertificateItem(String cert_img, String cert_title) {
             this.cert_img = cert_img;
             this.cert_title = cert_title;
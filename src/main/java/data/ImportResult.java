@@ -0,0 +1,76 @@
+package data;
+
+/**
+ * Outcome of one record of a bulk import, a line of its NDJSON response.
+ */
+public class ImportResult {
+    public static final String ORDERED = "ORDERED";
+    public static final String INVALID = "INVALID";
+    public static final String FAILED = "FAILED";
+
+    /** Line of the record in the request body, from 1 */
+    private long line;
+    private String user_id;
+    private String certificate_id;
+    private String status;
+    private String transaction_id;
+    private String error;
+
+    public ImportResult() {
+    }
+
+    public ImportResult(long line, String user_id, String certificate_id, String status) {
+        this.line = line;
+        this.user_id = user_id;
+        this.certificate_id = certificate_id;
+        this.status = status;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public String getUser_id() {
+        return user_id;
+    }
+
+    public void setUser_id(String user_id) {
+        this.user_id = user_id;
+    }
+
+    public String getCertificate_id() {
+        return certificate_id;
+    }
+
+    public void setCertificate_id(String certificate_id) {
+        this.certificate_id = certificate_id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getTransaction_id() {
+        return transaction_id;
+    }
+
+    public void setTransaction_id(String transaction_id) {
+        this.transaction_id = transaction_id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
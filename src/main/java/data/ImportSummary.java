@@ -0,0 +1,43 @@
+package data;
+
+/**
+ * Last line of a bulk import response, written once every record has its result.
+ */
+public class ImportSummary {
+    private long records;
+    private long ordered;
+    private long failed;
+
+    public ImportSummary() {
+    }
+
+    public ImportSummary(long records, long ordered, long failed) {
+        this.records = records;
+        this.ordered = ordered;
+        this.failed = failed;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public long getOrdered() {
+        return ordered;
+    }
+
+    public void setOrdered(long ordered) {
+        this.ordered = ordered;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+}
@@ -0,0 +1,45 @@
+package data;
+
+/**
+ * Last line of a ledger export: where it stopped, and the cursor continuing it later, or after an error.
+ */
+public class LedgerExportEnd {
+    /** Last block exported */
+    private long last_block;
+    private String cursor;
+    /** Set when the export stopped early because a block could not be read */
+    private String error;
+
+    public LedgerExportEnd() {
+    }
+
+    public LedgerExportEnd(long last_block, String cursor, String error) {
+        this.last_block = last_block;
+        this.cursor = cursor;
+        this.error = error;
+    }
+
+    public long getLast_block() {
+        return last_block;
+    }
+
+    public void setLast_block(long last_block) {
+        this.last_block = last_block;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
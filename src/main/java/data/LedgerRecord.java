@@ -0,0 +1,81 @@
+package data;
+
+/**
+ * A certificate write found in a committed block, a line of a ledger export.
+ */
+public class LedgerRecord {
+    private long block_number;
+    private String transaction_id;
+    private String user_id;
+    private String certificate_id;
+    private String cert_img;
+    private String cert_title;
+    /** The key was deleted, or its value could not be read */
+    private boolean deleted;
+    /** Cursor resuming the export after this record */
+    private String cursor;
+
+    public long getBlock_number() {
+        return block_number;
+    }
+
+    public void setBlock_number(long block_number) {
+        this.block_number = block_number;
+    }
+
+    public String getTransaction_id() {
+        return transaction_id;
+    }
+
+    public void setTransaction_id(String transaction_id) {
+        this.transaction_id = transaction_id;
+    }
+
+    public String getUser_id() {
+        return user_id;
+    }
+
+    public void setUser_id(String user_id) {
+        this.user_id = user_id;
+    }
+
+    public String getCertificate_id() {
+        return certificate_id;
+    }
+
+    public void setCertificate_id(String certificate_id) {
+        this.certificate_id = certificate_id;
+    }
+
+    public String getCert_img() {
+        return cert_img;
+    }
+
+    public void setCert_img(String cert_img) {
+        this.cert_img = cert_img;
+    }
+
+    public String getCert_title() {
+        return cert_title;
+    }
+
+    public void setCert_title(String cert_title) {
+        this.cert_title = cert_title;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+}
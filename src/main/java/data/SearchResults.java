@@ -0,0 +1,98 @@
+package data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Best matches of a certificate title search, best first.
+ */
+public class SearchResults {
+    private List<Hit> results = new ArrayList<>();
+    /** Certificates matching the query, of which results are the best */
+    private int total;
+    /** A query word matched too many terms, and only those in the most certificates were searched */
+    private boolean truncated;
+
+    public List<Hit> getResults() {
+        return results;
+    }
+
+    public void setResults(List<Hit> results) {
+        this.results = results;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public static class Hit {
+        private String user_id;
+        private String certificate_id;
+        private String cert_img;
+        private String cert_title;
+        private double score;
+
+        public Hit() {
+        }
+
+        public Hit(String user_id, String certificate_id, String cert_img, String cert_title, double score) {
+            this.user_id = user_id;
+            this.certificate_id = certificate_id;
+            this.cert_img = cert_img;
+            this.cert_title = cert_title;
+            this.score = score;
+        }
+
+        public String getUser_id() {
+            return user_id;
+        }
+
+        public void setUser_id(String user_id) {
+            this.user_id = user_id;
+        }
+
+        public String getCertificate_id() {
+            return certificate_id;
+        }
+
+        public void setCertificate_id(String certificate_id) {
+            this.certificate_id = certificate_id;
+        }
+
+        public String getCert_img() {
+            return cert_img;
+        }
+
+        public void setCert_img(String cert_img) {
+            this.cert_img = cert_img;
+        }
+
+        public String getCert_title() {
+            return cert_title;
+        }
+
+        public void setCert_title(String cert_title) {
+            this.cert_title = cert_title;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package data;
+
+/**
+ * State of a submitted transaction, as answered by /tx/{id}.
+ */
+public class TransactionStatus {
+    private String transaction_id;
+    private String status;
+    /** Milliseconds since the epoch of the last state change */
+    private long updated;
+
+    public TransactionStatus() {
+    }
+
+    public TransactionStatus(String transaction_id, String status, long updated) {
+        this.transaction_id = transaction_id;
+        this.status = status;
+        this.updated = updated;
+    }
+
+    public String getTransaction_id() {
+        return transaction_id;
+    }
+
+    public void setTransaction_id(String transaction_id) {
+        this.transaction_id = transaction_id;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(long updated) {
+        this.updated = updated;
+    }
+}
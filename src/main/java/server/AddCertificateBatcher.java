@@ -0,0 +1,172 @@
+package server;
+
+import blockchain.CertificateRegistry;
+import blockchain.InvocationException;
+import blockchain.SubmittedTransaction;
+import blockchain.TransactionState;
+import data.AddCertificate;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Groups add-certificate requests into one chaincode invocation, so a single proposal, endorsement
+ * round and orderer envelope cover the whole batch. A batch is submitted once it holds maxSize
+ * certificates or maxDelay milliseconds after its first certificate arrived, whichever comes first.
+ * Every caller's future completes with the batch transaction once the orderer accepted it, or fails
+ * with it. A batch the peers refuse is sent again one certificate per transaction, so only the callers
+ * of the records at fault fail.
+ */
+public class AddCertificateBatcher {
+
+    private final CertificateRegistry registry;
+    private final ChaincodeExecutor executor;
+    private final TransactionState.Listener listener;
+    private final int maxSize;
+    private final long maxDelay;
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("certificate-batch", true));
+
+    /** Guarded by this */
+    private List<PendingCertificate> batch = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder certificates = new LongAdder();
+    private final LongAdder rejectedBatches = new LongAdder();
+
+    public AddCertificateBatcher(CertificateRegistry registry, ChaincodeExecutor executor,
+                                 TransactionState.Listener listener, int maxSize, long maxDelay) {
+        this.registry = registry;
+        this.executor = executor;
+        this.listener = listener;
+        this.maxSize = maxSize;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return future completed when the orderer accepted the transaction carrying the certificate
+     */
+    public CompletableFuture<SubmittedTransaction> submit(AddCertificate certificate) {
+        PendingCertificate pending = new PendingCertificate(certificate);
+        List<PendingCertificate> full = null;
+        synchronized (this) {
+            batch.add(pending);
+            if (batch.size() >= maxSize) {
+                full = takeBatch();
+            } else if (batch.size() == 1) {
+                flushTask = timer.schedule(this::flush, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            sendLater(full);
+        }
+        return pending.result;
+    }
+
+    private void flush() {
+        List<PendingCertificate> due;
+        synchronized (this) {
+            due = takeBatch();
+        }
+        send(due);
+    }
+
+    private List<PendingCertificate> takeBatch() {
+        List<PendingCertificate> taken = batch;
+        batch = new ArrayList<>();
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        return taken;
+    }
+
+    /**
+     * Send on the timer thread, like timed flushes: the proposal is built and signed there rather than on
+     * the event loop or the callback that filled the batch.
+     */
+    private void sendLater(List<PendingCertificate> due) {
+        try {
+            timer.execute(() -> send(due));
+        } catch (RejectedExecutionException e) {
+            // Shut down: the last batches go out on the caller's thread.
+            send(due);
+        }
+    }
+
+    private void send(List<PendingCertificate> due) {
+        if (due.isEmpty()) {
+            return;
+        }
+        batches.increment();
+        certificates.add(due.size());
+
+        List<AddCertificate> records = new ArrayList<>(due.size());
+        for (PendingCertificate pending : due) {
+            records.add(pending.certificate);
+        }
+        executor.track(() -> registry.addCertificates(records, listener)).whenComplete((transaction, cause) -> {
+            if (cause != null && due.size() > 1 && rejected(cause)) {
+                // One bad record, or a chaincode without addCertificates, must not fail the others.
+                rejectedBatches.increment();
+                for (PendingCertificate pending : due) {
+                    sendLater(Collections.singletonList(pending));
+                }
+                return;
+            }
+            for (PendingCertificate pending : due) {
+                if (cause != null) {
+                    pending.result.completeExceptionally(cause);
+                } else {
+                    pending.result.complete(transaction);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return whether the transaction was refused before reaching the orderer, so it surely does not commit
+     */
+    private static boolean rejected(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (!(cause instanceof InvocationException)) {
+            return false;
+        }
+        InvocationException.Stage stage = ((InvocationException) cause).getStage();
+        return !((InvocationException) cause).isTimeout()
+                && (stage == InvocationException.Stage.ENDORSE || stage == InvocationException.Stage.VERIFY);
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("addCertificate.batches", batches::sum);
+        metrics.register("addCertificate.batchedCertificates", certificates::sum);
+        metrics.register("addCertificate.rejectedBatches", rejectedBatches::sum);
+    }
+
+    public void shutdown() {
+        timer.shutdown();
+        flush();
+    }
+
+    private static final class PendingCertificate {
+        final AddCertificate certificate;
+        final CompletableFuture<SubmittedTransaction> result = new CompletableFuture<>();
+
+        PendingCertificate(AddCertificate certificate) {
+            this.certificate = certificate;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Per-client, per-user and global token buckets in front of expensive routes. The check runs on the event
+ * loop before the route, so a refused request costs no chaincode proposal; it is answered 429 with a
+ * Retry-After, in its place among the connection's pipelined responses.
+ * <p>
+ * A request takes a token from the bucket of its client address, of the user it names and the global one,
+ * or from none of them: tokens taken before a bucket refuses are given back. The user is named by the
+ * request, so the client's bucket is what holds back a client rotating user ids. At most maxUsers users and
+ * as many client addresses are tracked; buckets of idle ones are dropped, at most once a second, and while
+ * none is idle further ones share a single bucket.
+ * <p>
+ * Work queued rather than answered, the records of a bulk import, {@link #acquire waits} for its tokens.
+ */
+public class AdmissionControl {
+
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+    private final TokenBucket global;
+    private final Buckets clients;
+    private final Buckets users;
+
+    /** Retries the acquisitions waiting for a token */
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("admission", true));
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejectedClient = new LongAdder();
+    private final LongAdder rejectedUser = new LongAdder();
+    private final LongAdder rejectedGlobal = new LongAdder();
+
+    public AdmissionControl(boolean enabled, double clientRate, int clientBurst, double userRate, int userBurst,
+                            double globalRate, int globalBurst, int maxUsers) {
+        this.enabled = enabled;
+        this.clients = new Buckets(clientRate, clientBurst, maxUsers);
+        this.users = new Buckets(userRate, userBurst, maxUsers);
+        this.global = new TokenBucket(globalRate, globalBurst);
+    }
+
+    public AdmissionControl(ServerConfig config) {
+        this(config.isAdmissionEnabled(), config.getAdmissionClientRate(), config.getAdmissionClientBurst(),
+                config.getAdmissionUserRate(), config.getAdmissionUserBurst(),
+                config.getAdmissionGlobalRate(), config.getAdmissionGlobalBurst(), config.getAdmissionMaxUsers());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param user key of the request's per-user bucket
+     * @return the route, answering 429 when the client's, the user's or the global bucket is empty
+     */
+    public Route limit(Function<RequestContext, String> user, Route route) {
+        if (!enabled) {
+            return route;
+        }
+        return request -> {
+            admit(request.getClient(), user.apply(request));
+            return route.handle(request);
+        };
+    }
+
+    /**
+     * @throws TooManyRequestsException if a bucket is empty
+     */
+    public void admit(String client, String user) {
+        long wait = tryAdmit(client, user);
+        if (wait > 0) {
+            throw new TooManyRequestsException("too many requests", retryAfter(wait));
+        }
+    }
+
+    /**
+     * Take a token for a request of the user from the client, unless a bucket is empty.
+     *
+     * @return 0 if admitted, otherwise nanoseconds until the empty bucket has a token
+     */
+    public long tryAdmit(String client, String user) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        TokenBucket clientBucket = clients.get(client, now);
+        long wait = clientBucket.tryAcquire(now);
+        if (wait > 0) {
+            rejectedClient.increment();
+            return wait;
+        }
+        TokenBucket userBucket = users.get(user, now);
+        wait = userBucket.tryAcquire(now);
+        if (wait > 0) {
+            clientBucket.release(1);
+            rejectedUser.increment();
+            return wait;
+        }
+        wait = global.tryAcquire(now);
+        if (wait > 0) {
+            clientBucket.release(1);
+            userBucket.release(1);
+            rejectedGlobal.increment();
+            return wait;
+        }
+        admitted.increment();
+        return 0;
+    }
+
+    /**
+     * Take a token for a request of the user from the client as soon as the buckets have one.
+     *
+     * @return completes once admitted
+     */
+    public CompletableFuture<Void> acquire(String client, String user) {
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        acquire(client, user, acquired);
+        return acquired;
+    }
+
+    private void acquire(String client, String user, CompletableFuture<Void> acquired) {
+        long wait = tryAdmit(client, user);
+        if (wait == 0) {
+            acquired.complete(null);
+            return;
+        }
+        delayed.increment();
+        timer.schedule(() -> acquire(client, user, acquired), wait, TimeUnit.NANOSECONDS);
+    }
+
+    private static long retryAfter(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("admission.admitted", admitted::sum);
+        metrics.register("admission.delayed", delayed::sum);
+        metrics.register("admission.rejectedClient", rejectedClient::sum);
+        metrics.register("admission.rejectedUser", rejectedUser::sum);
+        metrics.register("admission.rejectedGlobal", rejectedGlobal::sum);
+        metrics.register("admission.trackedClients", clients.size::get);
+        metrics.register("admission.trackedUsers", users.size::get);
+    }
+
+    /**
+     * Buckets by key, at most max of them.
+     */
+    private static final class Buckets {
+        private final double rate;
+        private final int burst;
+        private final int max;
+        private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        /** Buckets in the map, or about to be; never above max */
+        private final AtomicInteger size = new AtomicInteger();
+        /** Shared by the keys not tracked while the map is full */
+        private final TokenBucket overflow;
+        private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+        Buckets(double rate, int burst, int max) {
+            this.rate = rate;
+            this.burst = burst;
+            this.max = max;
+            this.overflow = new TokenBucket(rate, burst);
+        }
+
+        TokenBucket get(String key, long now) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (size.get() >= max) {
+                sweep(now);
+            }
+            if (size.incrementAndGet() > max) {
+                size.decrementAndGet();
+                return overflow;
+            }
+            TokenBucket created = new TokenBucket(rate, burst);
+            bucket = buckets.putIfAbsent(key, created);
+            if (bucket != null) {
+                size.decrementAndGet();
+                return bucket;
+            }
+            return created;
+        }
+
+        /**
+         * Drop the full buckets, unless another thread swept less than a second ago.
+         */
+        private void sweep(long now) {
+            long next = nextSweep.get();
+            if (now - next < 0 || !nextSweep.compareAndSet(next, now + SWEEP_INTERVAL)) {
+                return;
+            }
+            buckets.entrySet().removeIf(entry -> {
+                if (entry.getValue().isFull(now)) {
+                    size.decrementAndGet();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package server;
+
+import com.alibaba.fastjson.JSONException;
+import data.AddCertificate;
+import data.ImportResult;
+import data.ImportSummary;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * One bulk import: reads certificates from a streamed request body, one record per line as NDJSON
+ * ({"user_id": ..., "certificate_id": ...}) or CSV (user_id,certificate_id with an optional header
+ * line), and answers with an NDJSON line per record as its transaction is ordered or fails, then an
+ * {@link ImportSummary}.
+ * <p>
+ * At most window records are submitted at a time; records parsed beyond that wait, and the body is
+ * suspended while window of them wait, so an import holds about two windows of records whatever its
+ * size. Results are queued by the completing threads and written as the connection takes them.
+ */
+public class BulkImport implements StreamedRequest.Body, ChunkedResponse.Live {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+    /** Longer lines are answered as invalid without being parsed */
+    static final int MAX_LINE_LENGTH = 16384;
+    private static final String CSV_HEADER = "user_id,certificate_id";
+
+    private final boolean csv;
+    private final int window;
+    private final Function<AddCertificate, CompletableFuture<String>> submit;
+    private final JsonCodec codec;
+
+    // Parser state, only touched on the event loop.
+    private final ByteBuf line = Unpooled.buffer();
+    private boolean overlong;
+    private long lineNumber;
+
+    /** Guarded by this */
+    private final ArrayDeque<Record> waiting = new ArrayDeque<>();
+    private final ArrayDeque<Object> results = new ArrayDeque<>();
+    private int inFlight;
+    private long records;
+    private long ordered;
+    private long failed;
+    private boolean ended;
+    private boolean summarized;
+    private boolean closed;
+    private Runnable resumeOutput;
+    private Runnable resumeInput;
+
+    /**
+     * @param submit submits a certificate and completes with its transaction id once ordered
+     */
+    public BulkImport(boolean csv, int window, Function<AddCertificate, CompletableFuture<String>> submit,
+                      JsonCodec codec) {
+        this.csv = csv;
+        this.window = window;
+        this.submit = submit;
+        this.codec = codec;
+    }
+
+    @Override
+    public void content(ByteBuf chunk) {
+        if (line.refCnt() == 0) {
+            // Closed with its connection.
+            return;
+        }
+        int from = chunk.readerIndex();
+        int to = chunk.writerIndex();
+        while (from < to) {
+            int lf = chunk.indexOf(from, to, (byte) '\n');
+            int end = lf == -1 ? to : lf;
+            if (!overlong) {
+                if (line.readableBytes() + end - from > MAX_LINE_LENGTH) {
+                    overlong = true;
+                    line.clear();
+                } else {
+                    line.writeBytes(chunk, from, end - from);
+                }
+            }
+            if (lf == -1) {
+                break;
+            }
+            endLine();
+            from = lf + 1;
+        }
+        drain();
+    }
+
+    @Override
+    public void end() {
+        if (line.refCnt() == 0) {
+            return;
+        }
+        if (line.isReadable() || overlong) {
+            endLine();
+        }
+        line.release();
+        synchronized (this) {
+            ended = true;
+        }
+        drain();
+        wakeOutput();
+    }
+
+    private void endLine() {
+        lineNumber++;
+        if (overlong) {
+            overlong = false;
+            reject(new ImportResult(lineNumber, null, null, ImportResult.INVALID), "line too long");
+            return;
+        }
+        int length = line.readableBytes();
+        if (length > 0 && line.getByte(line.writerIndex() - 1) == '\r') {
+            line.writerIndex(line.writerIndex() - 1);
+        }
+        try {
+            if (isBlank(line)) {
+                return;
+            }
+            AddCertificate certificate;
+            try {
+                certificate = csv ? parseCsv(line.toString(UTF_8)) : JsonCodec.decode(line, AddCertificate.class);
+            } catch (JSONException | IllegalArgumentException e) {
+                reject(new ImportResult(lineNumber, null, null, ImportResult.INVALID), e.getMessage());
+                return;
+            }
+            if (certificate == null) {
+                // The CSV header.
+                return;
+            }
+            if (isEmpty(certificate.getUser_id()) || isEmpty(certificate.getCertificate_id())) {
+                reject(new ImportResult(lineNumber, certificate.getUser_id(), certificate.getCertificate_id(),
+                        ImportResult.INVALID), "user_id and certificate_id are required");
+                return;
+            }
+            synchronized (this) {
+                records++;
+                waiting.add(new Record(lineNumber, certificate));
+            }
+        } finally {
+            line.clear();
+        }
+    }
+
+    /**
+     * @return the certificate of a CSV line, or null for the header
+     */
+    private AddCertificate parseCsv(String text) {
+        if (lineNumber == 1 && text.trim().equalsIgnoreCase(CSV_HEADER)) {
+            return null;
+        }
+        List<String> fields = splitCsv(text);
+        if (fields.size() != 2) {
+            throw new IllegalArgumentException("expected 2 fields, found " + fields.size());
+        }
+        AddCertificate certificate = new AddCertificate();
+        certificate.setUser_id(fields.get(0));
+        certificate.setCertificate_id(fields.get(1));
+        return certificate;
+    }
+
+    /**
+     * Fields separated by commas, optionally quoted with "" escaping a quote (RFC 4180).
+     */
+    static List<String> splitCsv(String text) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private void reject(ImportResult result, String error) {
+        result.setError(error);
+        synchronized (this) {
+            records++;
+            failed++;
+            results.add(result);
+        }
+        wakeOutput();
+    }
+
+    /**
+     * Submit waiting records while the window has room.
+     */
+    private void drain() {
+        Runnable wakeInput = null;
+        while (true) {
+            Record record;
+            synchronized (this) {
+                if (closed || inFlight >= window || waiting.isEmpty()) {
+                    if (waiting.size() < window) {
+                        wakeInput = resumeInput;
+                    }
+                    break;
+                }
+                record = waiting.poll();
+                inFlight++;
+            }
+            CompletableFuture<String> submitted;
+            try {
+                submitted = submit.apply(record.certificate);
+            } catch (RuntimeException e) {
+                submitted = new CompletableFuture<>();
+                submitted.completeExceptionally(e);
+            }
+            submitted.whenComplete((transactionId, cause) -> completed(record, transactionId, cause));
+        }
+        if (wakeInput != null) {
+            wakeInput.run();
+        }
+    }
+
+    private void completed(Record record, String transactionId, Throwable cause) {
+        ImportResult result = new ImportResult(record.line, record.certificate.getUser_id(),
+                record.certificate.getCertificate_id(), cause == null ? ImportResult.ORDERED : ImportResult.FAILED);
+        if (cause == null) {
+            result.setTransaction_id(transactionId);
+        } else {
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            result.setError(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        }
+        synchronized (this) {
+            inFlight--;
+            if (cause == null) {
+                ordered++;
+            } else {
+                failed++;
+            }
+            results.add(result);
+        }
+        drain();
+        wakeOutput();
+    }
+
+    @Override
+    public synchronized boolean isSuspended() {
+        return waiting.size() >= window;
+    }
+
+    @Override
+    public synchronized void resumeReadingWith(Runnable resume) {
+        resumeInput = resume;
+    }
+
+    @Override
+    public void resumeWith(Runnable resume) {
+        synchronized (this) {
+            resumeOutput = resume;
+        }
+        // Writes whatever completed before the response went out.
+        resume.run();
+    }
+
+    private void wakeOutput() {
+        Runnable wakeUp;
+        synchronized (this) {
+            wakeUp = resumeOutput;
+        }
+        if (wakeUp != null) {
+            wakeUp.run();
+        }
+    }
+
+    private synchronized boolean isDone() {
+        return ended && inFlight == 0 && waiting.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean isEndOfInput() {
+        return closed || (summarized && results.isEmpty());
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            waiting.clear();
+            results.clear();
+        }
+        // Closed on the event loop, like the parser runs.
+        if (line.refCnt() > 0) {
+            line.release();
+        }
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) {
+        return readChunk(ctx.alloc());
+    }
+
+    /**
+     * @return the queued results, or null to suspend until the next one
+     */
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) {
+        synchronized (this) {
+            boolean summarize = !summarized && isDone();
+            if (closed || (results.isEmpty() && !summarize)) {
+                return null;
+            }
+            ByteBuf chunk = codec.allocate(allocator);
+            try {
+                for (Object result; (result = results.poll()) != null; ) {
+                    JsonCodec.write(chunk, result);
+                    chunk.writeByte('\n');
+                }
+                if (summarize) {
+                    JsonCodec.write(chunk, new ImportSummary(records, ordered, failed));
+                    chunk.writeByte('\n');
+                    summarized = true;
+                }
+                return chunk;
+            } catch (RuntimeException e) {
+                chunk.release();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    @Override
+    public synchronized long progress() {
+        return ordered + failed;
+    }
+
+    private static boolean isBlank(ByteBuf buf) {
+        for (int i = buf.readerIndex(); i < buf.writerIndex(); i++) {
+            if (!Character.isWhitespace(buf.getByte(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static final class Record {
+        final long line;
+        final AddCertificate certificate;
+
+        Record(long line, AddCertificate certificate) {
+            this.line = line;
+            this.certificate = certificate;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package server;
+
+import blockchain.CertificateEvents;
+import blockchain.CertificateWrite;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of get-certificates responses keyed by user. Entries are dropped when a committed
+ * block writes one of the user's certificate keys, and explicitly by add-certificate once its transaction
+ * is committed, so a user always reads their own writes.
+ * <p>
+ * A load that started before an invalidation of its user is not stored, otherwise a slow query could put
+ * back the list the invalidation just removed. Users are spread over segments, each with its own lock and
+ * LRU order, and over generation counters, so writes of one user neither block reads of the others nor
+ * discard their loads. Values are kept encoded, with their compressed forms, and are shared.
+ */
+public class CertificateCache implements CertificateEvents.Listener {
+
+    private static final int SEGMENTS = 16;
+    /** Users sharing a counter also discard each other's loads, so there are many more than segments */
+    private static final int GENERATIONS = 4096;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    /** Bumped by every invalidation of a user of the counter */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CertificateCache(final int maxEntries) {
+        int segmentEntries = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentEntries);
+        }
+    }
+
+    private static int hash(String userId) {
+        int h = userId.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segment(String userId) {
+        return segments[(hash(userId) & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static int generationIndex(String userId) {
+        return (hash(userId) & 0x7fffffff) % GENERATIONS;
+    }
+
+    /**
+     * @return cached certificates of the user, or null on a miss
+     */
+    public CompressedResponse get(String userId) {
+        Segment segment = segment(userId);
+        CompressedResponse certificates;
+        synchronized (segment) {
+            certificates = segment.get(userId);
+        }
+        if (certificates == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return certificates;
+    }
+
+    /**
+     * @return token to pass to {@link #put} for a load of the user started now
+     */
+    public long generation(String userId) {
+        return generations.get(generationIndex(userId));
+    }
+
+    /**
+     * Store a loaded value unless the user was invalidated since the load started.
+     */
+    public void put(String userId, CompressedResponse certificates, long loadGeneration) {
+        Segment segment = segment(userId);
+        synchronized (segment) {
+            if (generations.get(generationIndex(userId)) == loadGeneration) {
+                segment.put(userId, certificates);
+            }
+        }
+    }
+
+    public void invalidate(String userId) {
+        Segment segment = segment(userId);
+        synchronized (segment) {
+            generations.incrementAndGet(generationIndex(userId));
+            segment.remove(userId);
+        }
+        invalidations.increment();
+    }
+
+    @Override
+    public void blockCommitted(long blockNumber, List<CertificateWrite> writes) {
+        for (CertificateWrite write : writes) {
+            invalidate(write.getUserId());
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("certificateCache.size", () -> {
+            int size = 0;
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    size += segment.size();
+                }
+            }
+            return size;
+        });
+        metrics.register("certificateCache.hits", hits::sum);
+        metrics.register("certificateCache.misses", misses::sum);
+        metrics.register("certificateCache.evictions", evictions::sum);
+        metrics.register("certificateCache.invalidations", invalidations::sum);
+    }
+
+    private final class Segment extends LinkedHashMap<String, CompressedResponse> {
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompressedResponse> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package server;
+
+import blockchain.CertificateEvents;
+import blockchain.CertificateRegistry;
+import blockchain.CertificateWrite;
+import data.GetCertificates;
+import data.SearchResults;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Inverted index of the words of every certificate title on the ledger, one per user: term to the sorted
+ * ids of the user's certificates containing it. Kept up to date from block events; a write older than the
+ * one indexed for its key is ignored, so blocks may be applied in any order.
+ * <p>
+ * The certificates are saved to a snapshot file with the block up to which every block was applied.
+ * On start the snapshot is loaded and only the blocks after it are read from the ledger; the same
+ * catch-up fills gaps left by missed block events before each periodic snapshot.
+ * <p>
+ * Query words match as prefixes and must all match. Certificates are ranked by the rarity of the matched
+ * terms among the user's certificates, prefix matches scoring by the share of the term they match. A word
+ * matching more than MAX_EXPANSIONS terms searches those in the most certificates, and the results say
+ * they are truncated.
+ * <p>
+ * A search only reads the index of the user it names, so it costs as much as that user's certificates
+ * whatever the size of the ledger. The ledger has no notion of public certificates, so nothing of other
+ * users is visible; an index of everyone's titles must not leak them.
+ */
+public class CertificateIndex implements CertificateEvents.Listener {
+    private static final Log logger = LogFactory.getLog(CertificateIndex.class);
+
+    public static final String SEARCH_CERTIFICATES = "/search-certificates";
+
+    private static final String QUERY = "q";
+    private static final String LIMIT = "k";
+    private static final String USER_ID = "user_id";
+    private static final int DEFAULT_LIMIT = 10;
+    /** Terms a query word expands to at most */
+    private static final int MAX_EXPANSIONS = 128;
+
+    private static final int SNAPSHOT_MAGIC = 0x45444958;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final File snapshotFile;
+    private final long snapshotInterval;
+    private final int maxResults;
+    private final ScheduledExecutorService maintenance =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("certificate-index", true));
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /** Guarded by lock */
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, UserIndex> users = new HashMap<>();
+    /** Terms of all users together */
+    private int termCount;
+    /** Every block up to this one is applied */
+    private long appliedThrough = -1;
+    /** Applied blocks after appliedThrough */
+    private final TreeSet<Long> appliedAbove = new TreeSet<>();
+    private int liveDocuments;
+
+    /**
+     * @param snapshotInterval seconds between snapshots
+     */
+    public CertificateIndex(File snapshotFile, long snapshotInterval, int maxResults) {
+        this.snapshotFile = snapshotFile;
+        this.snapshotInterval = snapshotInterval;
+        this.maxResults = maxResults;
+        loadSnapshot();
+    }
+
+    public CertificateIndex(ServerConfig config) {
+        this(new File(config.getSearchSnapshotFile()), config.getSearchSnapshotInterval(),
+                config.getSearchMaxResults());
+    }
+
+    /**
+     * Read the blocks committed since the snapshot, then keep taking snapshots. Register the index for
+     * block events first, so no block falls between the two.
+     */
+    public void start(CertificateRegistry registry) {
+        maintenance.execute(() -> catchUp(registry));
+        maintenance.scheduleWithFixedDelay(() -> {
+            catchUp(registry);
+            saveSnapshot();
+        }, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+    }
+
+    public void shutdown() {
+        maintenance.shutdownNow();
+        saveSnapshot();
+    }
+
+    @Override
+    public void blockCommitted(long blockNumber, List<CertificateWrite> writes) {
+        lock.writeLock().lock();
+        try {
+            for (CertificateWrite write : writes) {
+                apply(write);
+            }
+            if (blockNumber > appliedThrough) {
+                appliedAbove.add(blockNumber);
+                while (!appliedAbove.isEmpty() && appliedAbove.first() == appliedThrough + 1) {
+                    appliedThrough = appliedAbove.pollFirst();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(CertificateWrite write) {
+        String key = write.getUserId() + '\u0000' + write.getCertificateId();
+        Integer id = ids.get(key);
+        if (id != null) {
+            Document indexed = documents.get(id);
+            if (write.getBlockNumber() < indexed.block) {
+                return;
+            }
+            unindex(id, indexed);
+        } else {
+            id = documents.size();
+            ids.put(key, id);
+            documents.add(null);
+        }
+        GetCertificates.CertificateItem item = write.getItem();
+        Document document = item == null
+                ? new Document(write.getUserId(), write.getCertificateId(), null, null, write.getBlockNumber(), true)
+                : new Document(write.getUserId(), write.getCertificateId(), item.getCert_img(), item.getCert_title(),
+                write.getBlockNumber(), false);
+        documents.set(id, document);
+        index(id, document);
+    }
+
+    private void index(int id, Document document) {
+        if (document.deleted) {
+            return;
+        }
+        UserIndex user = users.computeIfAbsent(document.userId, u -> new UserIndex());
+        for (String term : tokenize(document.title)) {
+            user.terms.computeIfAbsent(term, t -> {
+                termCount++;
+                return new Postings();
+            }).add(id);
+        }
+        user.liveDocuments++;
+        liveDocuments++;
+    }
+
+    private void unindex(int id, Document document) {
+        if (document.deleted) {
+            return;
+        }
+        UserIndex user = users.get(document.userId);
+        for (String term : tokenize(document.title)) {
+            Postings postings = user.terms.get(term);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                user.terms.remove(term);
+                termCount--;
+            }
+        }
+        if (--user.liveDocuments == 0) {
+            users.remove(document.userId);
+        }
+        liveDocuments--;
+    }
+
+    /**
+     * @return the distinct lower case words of a text
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); ) {
+            int c = i < text.length() ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start == -1) {
+                    start = i;
+                }
+            } else if (start != -1) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += i < text.length() ? Character.charCount(c) : 1;
+        }
+        return words;
+    }
+
+    /**
+     * The route: q the words, k the number of results, user_id the user whose certificates are searched.
+     */
+    public Object search(RequestContext request) {
+        String query = request.getParameter(QUERY);
+        if (query == null) {
+            throw new IllegalArgumentException("q is required");
+        }
+        String limit = request.getParameter(LIMIT);
+        int k = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit);
+        if (k <= 0 || k > maxResults) {
+            throw new IllegalArgumentException("k must be between 1 and " + maxResults);
+        }
+        String userId = request.getParameter(USER_ID);
+        if (userId == null || userId.isEmpty()) {
+            throw new IllegalArgumentException("user_id is required");
+        }
+        return search(query, userId, k);
+    }
+
+    /**
+     * @param userId the user whose certificates are searched
+     */
+    public SearchResults search(String query, String userId, int k) {
+        SearchResults results = new SearchResults();
+        Set<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            return results;
+        }
+        lock.readLock().lock();
+        try {
+            UserIndex user = users.get(userId);
+            if (user == null) {
+                return results;
+            }
+            Map<Integer, Double> scores = null;
+            for (String word : words) {
+                Map<Integer, Double> wordScores = new HashMap<>();
+                for (Map.Entry<String, Postings> match : expand(user.terms, word, results)) {
+                    Postings postings = match.getValue();
+                    double weight = Math.log(1 + (double) user.liveDocuments / postings.size)
+                            * word.length() / match.getKey().length();
+                    for (int i = 0; i < postings.size; i++) {
+                        int id = postings.ids[i];
+                        if (scores == null || scores.containsKey(id)) {
+                            wordScores.merge(id, weight, Math::max);
+                        }
+                    }
+                }
+                if (scores != null) {
+                    for (Map.Entry<Integer, Double> score : wordScores.entrySet()) {
+                        score.setValue(score.getValue() + scores.get(score.getKey()));
+                    }
+                }
+                scores = wordScores;
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+
+            // Worst of the best k on top; ties go to the later certificate.
+            PriorityQueue<Map.Entry<Integer, Double>> best = new PriorityQueue<>(k + 1, (a, b) ->
+                    a.getValue().equals(b.getValue()) ? Integer.compare(a.getKey(), b.getKey())
+                            : Double.compare(a.getValue(), b.getValue()));
+            int total = 0;
+            for (Map.Entry<Integer, Double> score : scores.entrySet()) {
+                total++;
+                best.add(score);
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+            Document[] hits = new Document[best.size()];
+            double[] hitScores = new double[best.size()];
+            for (int i = hits.length - 1; i >= 0; i--) {
+                Map.Entry<Integer, Double> score = best.poll();
+                hits[i] = documents.get(score.getKey());
+                hitScores[i] = score.getValue();
+            }
+            for (int i = 0; i < hits.length; i++) {
+                results.getResults().add(new SearchResults.Hit(hits[i].userId, hits[i].certificateId, hits[i].img,
+                        hits[i].title, hitScores[i]));
+            }
+            results.setTotal(total);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the terms a query word is a prefix of, at most MAX_EXPANSIONS of them: those in the most
+     * certificates, which a cut would lose most matches of. Marks the results truncated after a cut.
+     */
+    private static Collection<Map.Entry<String, Postings>> expand(TreeMap<String, Postings> terms, String word,
+                                                                  SearchResults results) {
+        SortedMap<String, Postings> matches = terms.subMap(word, word + Character.MAX_VALUE);
+        if (matches.size() <= MAX_EXPANSIONS) {
+            return matches.entrySet();
+        }
+        // Least frequent of the most frequent on top.
+        PriorityQueue<Map.Entry<String, Postings>> kept = new PriorityQueue<>(MAX_EXPANSIONS + 1,
+                (a, b) -> Integer.compare(a.getValue().size, b.getValue().size));
+        for (Map.Entry<String, Postings> match : matches.entrySet()) {
+            kept.add(match);
+            if (kept.size() > MAX_EXPANSIONS) {
+                kept.poll();
+            }
+        }
+        results.setTruncated(true);
+        return kept;
+    }
+
+    /**
+     * Apply the blocks missing before the first block applied above appliedThrough, or before the ledger
+     * height if there is none.
+     */
+    void catchUp(CertificateRegistry registry) {
+        try {
+            long height = registry.getBlockHeight();
+            while (true) {
+                long next;
+                long limit;
+                lock.readLock().lock();
+                try {
+                    next = appliedThrough + 1;
+                    limit = appliedAbove.isEmpty() ? height - 1 : appliedAbove.first() - 1;
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (next > limit) {
+                    return;
+                }
+                blockCommitted(next, registry.getCertificateWrites(next));
+            }
+        } catch (Exception e) {
+            logger.warn("Could not catch up the certificate index with the ledger", e);
+        }
+    }
+
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                logger.warn(String.format("Ignoring certificate index snapshot %s of another format", snapshotFile));
+                return;
+            }
+            long through = in.readLong();
+            int count = in.readInt();
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < count; i++) {
+                    String userId = readString(in);
+                    String certificateId = readString(in);
+                    long block = in.readLong();
+                    boolean deleted = in.readBoolean();
+                    Document document = deleted ? new Document(userId, certificateId, null, null, block, true)
+                            : new Document(userId, certificateId, readString(in), readString(in), block, false);
+                    ids.put(userId + '\u0000' + certificateId, documents.size());
+                    documents.add(document);
+                    index(documents.size() - 1, document);
+                }
+                appliedThrough = through;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info(String.format("Loaded %d certificates up to block %d from %s", count, through, snapshotFile));
+        } catch (IOException | RuntimeException e) {
+            logger.warn(String.format("Could not load certificate index snapshot %s, reading the ledger instead",
+                    snapshotFile), e);
+            lock.writeLock().lock();
+            try {
+                ids.clear();
+                documents.clear();
+                users.clear();
+                termCount = 0;
+                liveDocuments = 0;
+                appliedThrough = -1;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Write the certificates to a temporary file and move it over the snapshot, so a crash leaves the
+     * previous snapshot.
+     */
+    void saveSnapshot() {
+        List<Document> snapshot;
+        long through;
+        lock.readLock().lock();
+        try {
+            // Documents are immutable, so the copy can be written without the lock.
+            snapshot = new ArrayList<>(documents);
+            through = appliedThrough;
+        } finally {
+            lock.readLock().unlock();
+        }
+        File temporary = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(through);
+                out.writeInt(snapshot.size());
+                for (Document document : snapshot) {
+                    writeString(out, document.userId);
+                    writeString(out, document.certificateId);
+                    out.writeLong(document.block);
+                    out.writeBoolean(document.deleted);
+                    if (!document.deleted) {
+                        writeString(out, document.img);
+                        writeString(out, document.title);
+                    }
+                }
+            }
+            Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn(String.format("Could not write certificate index snapshot %s", snapshotFile), e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("search.certificates", () -> {
+            lock.readLock().lock();
+            try {
+                return liveDocuments;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        metrics.register("search.terms", () -> {
+            lock.readLock().lock();
+            try {
+                return termCount;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+        metrics.register("search.appliedThroughBlock", () -> {
+            lock.readLock().lock();
+            try {
+                return appliedThrough;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * The indexed state of one certificate key; replaced, never modified.
+     */
+    private static final class Document {
+        final String userId;
+        final String certificateId;
+        final String img;
+        final String title;
+        /** Block of the write indexed */
+        final long block;
+        final boolean deleted;
+
+        Document(String userId, String certificateId, String img, String title, long block, boolean deleted) {
+            this.userId = userId;
+            this.certificateId = certificateId;
+            this.img = img;
+            this.title = title;
+            this.block = block;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * Terms of the certificates of one user.
+     */
+    private static final class UserIndex {
+        final TreeMap<String, Postings> terms = new TreeMap<>();
+        int liveDocuments;
+    }
+
+    /**
+     * Sorted certificate ids of a term in a growable int array.
+     */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+}
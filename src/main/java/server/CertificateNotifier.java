@@ -0,0 +1,100 @@
+package server;
+
+import blockchain.CertificateEvents;
+import blockchain.CertificateWrite;
+import com.alibaba.fastjson.JSONObject;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes committed certificates to the users subscribed to them, as "certificate" events on their
+ * {@link EventStream}s. Fed by the shared {@link CertificateEvents} listener; never blocks the chain's
+ * event threads, slow subscribers are coalesced by their stream.
+ */
+public class CertificateNotifier implements CertificateEvents.Listener {
+
+    public static final String CERTIFICATE_EVENT = "certificate";
+
+    private final int queueSize;
+    private final int maxSubscribers;
+    private final JsonCodec codec;
+    private final ConcurrentMap<String, Set<EventStream>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CertificateNotifier(int queueSize, int maxSubscribers, JsonCodec codec) {
+        this.queueSize = queueSize;
+        this.maxSubscribers = maxSubscribers;
+        this.codec = codec;
+    }
+
+    public CertificateNotifier(ServerConfig config) {
+        this(config.getEventQueueSize(), config.getEventMaxSubscribers(),
+                new JsonCodec(config.isDirectResponseBuffers()));
+    }
+
+    /**
+     * Open a stream of the user's certificate events; it unsubscribes when the connection closes.
+     *
+     * @throws TooManyRequestsException if there are already maxSubscribers streams
+     */
+    public EventStream subscribe(String userId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new TooManyRequestsException("too many event subscribers", 5);
+        }
+        EventStream stream = new EventStream(queueSize, codec, closed -> unsubscribe(userId, closed));
+        subscribers.computeIfAbsent(userId, u -> new CopyOnWriteArraySet<>()).add(stream);
+        return stream;
+    }
+
+    private void unsubscribe(String userId, EventStream stream) {
+        subscribers.computeIfPresent(userId, (u, streams) -> {
+            if (streams.remove(stream)) {
+                subscriberCount.decrementAndGet();
+            }
+            return streams.isEmpty() ? null : streams;
+        });
+    }
+
+    @Override
+    public void blockCommitted(long blockNumber, List<CertificateWrite> writes) {
+        for (CertificateWrite write : writes) {
+            if (write.isDelete()) {
+                continue;
+            }
+            Set<EventStream> streams = subscribers.get(write.getUserId());
+            if (streams == null) {
+                continue;
+            }
+            JSONObject event = new JSONObject(true);
+            event.put("user_id", write.getUserId());
+            event.put("certificate_id", write.getCertificateId());
+            event.put("cert_img", write.getItem().getCert_img());
+            event.put("cert_title", write.getItem().getCert_title());
+            event.put("block_number", blockNumber);
+            event.put("transaction_id", write.getTransactionId());
+            for (EventStream stream : streams) {
+                if (stream.offer(CERTIFICATE_EVENT, Long.toString(blockNumber), event)) {
+                    queued.increment();
+                } else {
+                    coalesced.increment();
+                }
+            }
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("events.subscribers", subscriberCount::get);
+        metrics.register("events.queued", queued::sum);
+        metrics.register("events.coalesced", coalesced::sum);
+    }
+}
@@ -0,0 +1,410 @@
+package server;
+
+import blockchain.CertificateRegistry;
+import blockchain.Fabric;
+import blockchain.SubmittedTransaction;
+import blockchain.TransactionState;
+import com.alibaba.fastjson.JSONObject;
+import data.AddCertificate;
+import data.GetCertificates;
+import data.TransactionStatus;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Routes of the certificate API. Request bodies are parsed on the event loop, as JSON or protobuf following
+ * their Content-Type; the chaincode calls run on the {@link ChaincodeExecutor}. add-certificate is submitted
+ * in batches by the {@link AddCertificateBatcher} once admitted by the {@link AdmissionControl}, and only
+ * once per idempotency key; get-certificates answers from the {@link CertificateCache} when it can.
+ * <p>
+ * add-certificate answers 202 with the transaction id as soon as the orderer accepted the transaction;
+ * its progress is read from /tx/{id}. With wait=true it answers once the transaction is committed, or 504
+ * when the commit is not seen within the transaction wait time.
+ * <p>
+ * get-certificates returns a page of the list when page_size or cursor is given, with the cursor of the
+ * next page in next_cursor, and answers a GET with 304 while the {@link CertificateVersions} of the user
+ * matches If-None-Match. export-certificates streams the whole list as a chunked JSON array, straight from
+ * the query and past the cache.
+ * certificate-events streams the user's newly committed certificates as Server-Sent Events.
+ * import-certificates submits the records of a streamed body through a {@link BulkImport}, each once
+ * admitted; export-ledger streams the certificate writes of committed blocks through a {@link LedgerExport}.
+ * search-certificates is answered by the {@link CertificateIndex}, and the certificate images by
+ * {@link StaticFiles}.
+ */
+public class CertificateRoutes {
+
+    public static final String ADD_CERTIFICATE = "/add-certificate";
+    public static final String GET_CERTIFICATES = "/get-certificates";
+    public static final String EXPORT_CERTIFICATES = "/export-certificates";
+    public static final String CERTIFICATE_EVENTS = "/certificate-events";
+    public static final String IMPORT_CERTIFICATES = "/import-certificates";
+    public static final String EXPORT_LEDGER = "/export-ledger";
+    public static final String TRANSACTION = "/tx/*";
+    public static final String METRICS = "/metrics";
+
+    private static final String USER_ID = "user_id";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String WAIT = "wait";
+    private static final String PAGE_SIZE = "page_size";
+    private static final String CURSOR = "cursor";
+    private static final String FROM_BLOCK = "from_block";
+    private static final String TO_BLOCK = "to_block";
+    /** Certificates encoded per chunk of an export */
+    private static final int EXPORT_CHUNK_SIZE = 64;
+
+    private final CertificateRegistry registry;
+    private final ChaincodeExecutor executor;
+    private final ChaincodeExecutor exports;
+    private final CertificateCache cache;
+    private final CertificateVersions versions;
+    private final AddCertificateBatcher batcher;
+    private final IdempotencyTable idempotency;
+    private final TransactionTable transactions;
+    private final SingleFlight<String, CompressedResponse> reads;
+    private final ResponseCompression compression;
+    private final AdmissionControl admission;
+    private final JsonCodec codec;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int importWindow;
+
+    private CertificateRoutes(CertificateRegistry registry, ChaincodeExecutor executor, ChaincodeExecutor exports,
+                              CertificateCache cache, CertificateVersions versions, AddCertificateBatcher batcher,
+                              IdempotencyTable idempotency,
+                              TransactionTable transactions, SingleFlight<String, CompressedResponse> reads,
+                              ResponseCompression compression, AdmissionControl admission, ServerConfig config) {
+        this.registry = registry;
+        this.executor = executor;
+        this.exports = exports;
+        this.cache = cache;
+        this.versions = versions;
+        this.batcher = batcher;
+        this.idempotency = idempotency;
+        this.transactions = transactions;
+        this.reads = reads;
+        this.compression = compression;
+        this.admission = admission;
+        this.codec = new JsonCodec(config.isDirectResponseBuffers());
+        this.defaultPageSize = config.getDefaultPageSize();
+        this.maxPageSize = config.getMaxPageSize();
+        this.importWindow = config.getImportWindow();
+    }
+
+    /**
+     * @param exports runs the block queries of export-ledger, so exports never hold the chaincode threads
+     * @return every route of the server, the certificate images and search included
+     */
+    public static RouteTable create(CertificateRegistry registry, ChaincodeExecutor executor,
+                                    ChaincodeExecutor exports, CertificateCache cache, CertificateVersions versions,
+                                    AddCertificateBatcher batcher,
+                                    IdempotencyTable idempotency, TransactionTable transactions,
+                                    ResponseCompression compression, AdmissionControl admission,
+                                    CertificateNotifier notifier, CertificateIndex index, StaticFiles images,
+                                    ServerConfig config, Metrics metrics) {
+        SingleFlight<String, CompressedResponse> reads = new SingleFlight<>("certificateReads");
+        reads.registerMetrics(metrics);
+        CertificateRoutes routes = new CertificateRoutes(registry, executor, exports, cache, versions, batcher,
+                idempotency, transactions, reads, compression, admission, config);
+        return new RouteTable()
+                .post(ADD_CERTIFICATE, admission.limit(CertificateRoutes::certificateUserId, routes::addCertificate))
+                .postStreamed(IMPORT_CERTIFICATES, routes::importCertificates)
+                .get(GET_CERTIFICATES, routes::getCertificates)
+                .post(GET_CERTIFICATES, routes::getCertificates)
+                .get(EXPORT_CERTIFICATES, routes::exportCertificates)
+                .post(EXPORT_CERTIFICATES, routes::exportCertificates)
+                .get(CERTIFICATE_EVENTS, request ->
+                        new ChunkedResponse(EventStream.CONTENT_TYPE, notifier.subscribe(userId(request))))
+                .get(EXPORT_LEDGER, routes::exportLedger)
+                .get(CertificateIndex.SEARCH_CERTIFICATES, index::search)
+                .get(StaticFiles.IMAGES, images::serve)
+                .get(TRANSACTION, routes::transactionStatus)
+                .get(METRICS, request -> metrics.snapshot());
+    }
+
+    private Object addCertificate(RequestContext request) {
+        AddCertificate certificate = request.getBody(AddCertificate.class);
+        if (certificate == null || certificate.getUser_id() == null || certificate.getCertificate_id() == null) {
+            throw new IllegalArgumentException("user_id and certificate_id are required");
+        }
+        // Retries of the same certificate join the first submission, with or without an Idempotency-Key.
+        String idempotencyKey = request.getRequest().headers().get(IDEMPOTENCY_KEY);
+        String key = idempotencyKey == null ? fingerprint(certificate)
+                : certificate.getUser_id() + '\u0000' + IDEMPOTENCY_KEY + '\u0000' + idempotencyKey;
+        CompletableFuture<SubmittedTransaction> submitted = submit(certificate, key);
+
+        if (Boolean.parseBoolean(request.getParameter(WAIT))) {
+            return submitted.thenCompose(transaction ->
+                    Fabric.awaitCommit(transaction).thenApply(committed -> certificate));
+        }
+        return submitted.thenApply(transaction -> StatusResponse.accepted(status(transaction.getTransactionId())));
+    }
+
+    /**
+     * Stream the certificate writes of the blocks from_block (default 0) to to_block (default the last
+     * committed block), or from a cursor of an earlier export.
+     */
+    private Object exportLedger(RequestContext request) {
+        String from = request.getParameter(FROM_BLOCK);
+        String to = request.getParameter(TO_BLOCK);
+        long fromBlock = from == null ? 0 : Long.parseLong(from);
+        long toBlock = to == null ? -1 : Long.parseLong(to);
+        if (fromBlock < 0 || (to != null && toBlock < fromBlock)) {
+            throw new IllegalArgumentException("invalid block range");
+        }
+        return new ChunkedResponse(LedgerExport.CONTENT_TYPE,
+                new LedgerExport(registry, exports, codec, fromBlock, request.getParameter(CURSOR), toBlock));
+    }
+
+    /**
+     * Import the certificates of an NDJSON or CSV body, streamed in over HTTP/1 (HTTP/2 requests are sent
+     * back to HTTP/1.1) or else aggregated, answering with an NDJSON result per record. Records are
+     * deduplicated like add-certificate retries.
+     */
+    private Object importCertificates(RequestContext request) {
+        FullHttpRequest msg = request.getRequest();
+        String contentType = msg.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        boolean csv = contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("text/csv");
+        String client = request.getClient();
+        // Each record waits for its admission tokens, holding a place in the window meanwhile, so an import
+        // goes at the rate of its client and users instead of around it.
+        BulkImport bulk = new BulkImport(csv, importWindow, certificate ->
+                admission.acquire(client, certificate.getUser_id())
+                        .thenCompose(admitted -> submit(certificate, fingerprint(certificate)))
+                        .thenApply(SubmittedTransaction::getTransactionId), codec);
+        if (msg instanceof StreamedRequest) {
+            ((StreamedRequest) msg).setBody(bulk);
+        } else {
+            bulk.content(msg.content().duplicate());
+            bulk.end();
+        }
+        return new ChunkedResponse(BulkImport.CONTENT_TYPE, bulk);
+    }
+
+    /**
+     * Submit a certificate once per idempotency key.
+     */
+    private CompletableFuture<SubmittedTransaction> submit(AddCertificate certificate, String key) {
+        return idempotency.execute(key, fingerprint(certificate), () ->
+                batcher.submit(certificate).thenApply(transaction -> {
+                    transaction.getCommit().whenComplete((committed, cause) -> {
+                        if (cause == null) {
+                            // Committed: make sure the user's next read goes to the ledger.
+                            cache.invalidate(certificate.getUser_id());
+                        } else {
+                            // Invalid or lost: a retry must submit again.
+                            idempotency.forget(key);
+                        }
+                    });
+                    return transaction;
+                }));
+    }
+
+    private static String fingerprint(AddCertificate certificate) {
+        return certificate.getUser_id() + '\u0000' + certificate.getCertificate_id();
+    }
+
+    private Object transactionStatus(RequestContext request) {
+        TransactionStatus status = transactions.get(request.getPath().substring(TRANSACTION.length() - 1));
+        return status == null ? new StatusResponse(HttpResponseStatus.NOT_FOUND, null) : status;
+    }
+
+    /**
+     * @return state of a transaction just accepted by the orderer
+     */
+    private TransactionStatus status(String transactionId) {
+        TransactionStatus status = transactions.get(transactionId);
+        return status != null ? status : new TransactionStatus(transactionId, TransactionState.ORDERED.name(),
+                System.currentTimeMillis());
+    }
+
+    /**
+     * A GET carries the ETag of the list and is answered 304 without reading it when If-None-Match names
+     * the user's current version.
+     */
+    private Object getCertificates(RequestContext request) {
+        String userId = userId(request);
+        String pageSize = parameter(request, PAGE_SIZE);
+        String cursor = parameter(request, CURSOR);
+        int limit = pageSize == null ? defaultPageSize : Integer.parseInt(pageSize);
+        if (limit <= 0 || limit > maxPageSize) {
+            throw new IllegalArgumentException("page_size must be between 1 and " + maxPageSize);
+        }
+        Cursor after = cursor == null ? null : Cursor.decode(cursor);
+        boolean conditional = request.getRequest().method() == HttpMethod.GET;
+        if (conditional) {
+            String etag = versions.etag(userId);
+            if (versions.notModified(request.getRequest().headers().get(HttpHeaderNames.IF_NONE_MATCH), etag)) {
+                return tagged(new StatusResponse(HttpResponseStatus.NOT_MODIFIED, null), etag);
+            }
+        }
+        return load(userId).thenApply(loaded -> {
+            Object body = pageSize == null && cursor == null ? loaded
+                    : page((GetCertificates) loaded.getValue(), after, limit);
+            return conditional ? tagged(new StatusResponse(HttpResponseStatus.OK, body), loaded.getEtag()) : body;
+        });
+    }
+
+    private static StatusResponse tagged(StatusResponse response, String etag) {
+        response.headers().set(HttpHeaderNames.ETAG, etag);
+        return response;
+    }
+
+    /**
+     * The list is encoded chunk by chunk as it is written, from the items of the query. It is neither cached
+     * nor encoded as a whole, unlike a get-certificates response.
+     */
+    private Object exportCertificates(RequestContext request) {
+        String userId = userId(request);
+        return executor.submit(() -> {
+            List<GetCertificates.CertificateItem> certificates = registry.getCertificates(userId).getCertificates();
+            return new ChunkedResponse("application/json; charset=UTF-8",
+                    new ChunkedJsonArray(certificates.iterator(), codec, EXPORT_CHUNK_SIZE));
+        });
+    }
+
+    /**
+     * @return the user's certificates from the cache, or else loaded from the ledger and cached. Concurrent
+     * loads of the same user share one chaincode query.
+     */
+    private CompletableFuture<CompressedResponse> load(String userId) {
+        CompressedResponse cached = cache.get(userId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long generation = cache.generation(userId);
+        String etag = versions.etag(userId);
+        // Only reads started after the same invalidations are shared, so nobody joins a read older
+        // than their own last write.
+        return reads.execute(CertificateRegistry.GET_CERTIFICATES + '\u0000' + userId + '\u0000' + generation,
+                () -> executor.submit(() -> {
+                    CompressedResponse certificates =
+                            new CompressedResponse(registry.getCertificates(userId), compression, etag);
+                    cache.put(userId, certificates, generation);
+                    return certificates;
+                }));
+    }
+
+    /**
+     * @param after cursor of the last certificate of the previous page, or null for the first page
+     */
+    private static GetCertificates page(GetCertificates all, Cursor after, int limit) {
+        List<GetCertificates.CertificateItem> certificates = all.getCertificates();
+        int from = after == null ? 0 : after.find(certificates) + 1;
+        int to = Math.min(from + limit, certificates.size());
+        GetCertificates page = new GetCertificates();
+        page.setCertificates(certificates.subList(from, to));
+        if (to < certificates.size()) {
+            page.setNext_cursor(Cursor.of(certificates, to - 1).encode());
+        }
+        return page;
+    }
+
+    /**
+     * Position after a certificate, named by its content rather than its index: the chaincode lists a user's
+     * certificates in the order of their keys, so certificates added or removed elsewhere in the list
+     * neither skip nor repeat the ones after the cursor. Items carry no certificate_id, so identical items
+     * are told apart by their occurrence.
+     * <p>
+     * Cursors are opaque to clients, so their format may change without breaking them.
+     */
+    static final class Cursor {
+        private final String key;
+        /** Items with the same key before this one */
+        private final int occurrence;
+
+        Cursor(String key, int occurrence) {
+            this.key = key;
+            this.occurrence = occurrence;
+        }
+
+        /**
+         * @return cursor of the item at index
+         */
+        static Cursor of(List<GetCertificates.CertificateItem> certificates, int index) {
+            String key = key(certificates.get(index));
+            int occurrence = 0;
+            for (int i = 0; i < index; i++) {
+                if (key.equals(key(certificates.get(i)))) {
+                    occurrence++;
+                }
+            }
+            return new Cursor(key, occurrence);
+        }
+
+        private static String key(GetCertificates.CertificateItem certificate) {
+            return String.valueOf(certificate.getCert_img()) + '\u0000' + certificate.getCert_title();
+        }
+
+        /**
+         * @return index of the item of the cursor
+         * @throws IllegalArgumentException if the item is no longer in the list
+         */
+        int find(List<GetCertificates.CertificateItem> certificates) {
+            int seen = 0;
+            for (int i = 0; i < certificates.size(); i++) {
+                if (key.equals(key(certificates.get(i))) && seen++ == occurrence) {
+                    return i;
+                }
+            }
+            throw new IllegalArgumentException("the certificate of the cursor was removed");
+        }
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((occurrence + ":" + key).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int colon = position.indexOf(':');
+            int occurrence = colon < 0 ? -1 : Integer.parseInt(position.substring(0, colon));
+            if (occurrence < 0) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+            return new Cursor(position.substring(colon + 1), occurrence);
+        }
+    }
+
+    /**
+     * The user is taken from the query string or else from a JSON body.
+     */
+    static String userId(RequestContext request) {
+        String userId = parameter(request, USER_ID);
+        if (userId == null || userId.isEmpty()) {
+            throw new IllegalArgumentException("user_id is required");
+        }
+        return userId;
+    }
+
+    /**
+     * The user of an add-certificate body, for admission before the route runs. The body is decoded
+     * once for both.
+     */
+    static String certificateUserId(RequestContext request) {
+        AddCertificate certificate = request.getBody(AddCertificate.class);
+        if (certificate == null || certificate.getUser_id() == null || certificate.getUser_id().isEmpty()) {
+            throw new IllegalArgumentException("user_id is required");
+        }
+        return certificate.getUser_id();
+    }
+
+    /**
+     * @return query parameter, or else field of a JSON body, or null
+     */
+    static String parameter(RequestContext request, String name) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            JSONObject json = request.getJsonBody();
+            value = json == null ? null : json.getString(name);
+        }
+        return value;
+    }
+}
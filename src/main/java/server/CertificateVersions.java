@@ -0,0 +1,104 @@
+package server;
+
+import blockchain.CertificateEvents;
+import blockchain.CertificateWrite;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of the last committed block that wrote each user's certificate keys, the version get-certificates
+ * is tagged with. Users not written since the server started, or dropped from the bounded table, share the
+ * floor: the ledger height at startup, raised to the block of every dropped user. A user's version so
+ * changes with every write and never decreases.
+ * <p>
+ * Tags are weak, since the gzip, deflate and identity forms of a list share one.
+ */
+public class CertificateVersions implements CertificateEvents.Listener {
+
+    private final Map<String, Long> blocks;
+    /** Version of every user not in blocks. Guarded by blocks. */
+    private long floor = -1;
+
+    private final LongAdder notModified = new LongAdder();
+
+    public CertificateVersions(final int maxEntries) {
+        this.blocks = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > maxEntries) {
+                    floor = Math.max(floor, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Set the floor to the last block of the ledger. Read the height after registering this listener, so
+     * no block is committed unseen between the two.
+     */
+    public void setLastBlock(long lastBlock) {
+        synchronized (blocks) {
+            floor = Math.max(floor, lastBlock);
+            blocks.values().removeIf(block -> block <= floor);
+        }
+    }
+
+    /**
+     * @return ETag of the user's certificates as of now. Take it before reading them, so a write committed
+     * meanwhile leaves a tag older than the list rather than the other way round.
+     */
+    public String etag(String userId) {
+        long version;
+        synchronized (blocks) {
+            Long block = blocks.get(userId);
+            version = block != null ? block : floor;
+        }
+        return "W/\"" + version + '"';
+    }
+
+    /**
+     * @return whether the If-None-Match header of a request names the tag, with the weak comparison
+     */
+    public boolean notModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = opaque(etag);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                notModified.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    @Override
+    public void blockCommitted(long blockNumber, List<CertificateWrite> writes) {
+        synchronized (blocks) {
+            for (CertificateWrite write : writes) {
+                // Blocks may be delivered out of order, after the user was dropped.
+                blocks.merge(write.getUserId(), Math.max(blockNumber, floor), Math::max);
+            }
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("certificateVersions.tracked", () -> {
+            synchronized (blocks) {
+                return blocks.size();
+            }
+        });
+        metrics.register("certificateVersions.notModified", notModified::sum);
+    }
+}
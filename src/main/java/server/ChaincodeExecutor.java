@@ -0,0 +1,94 @@
+package server;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking chaincode calls on dedicated threads so they never hold a Netty event loop for the
+ * endorse, order and commit cycle, and tracks asynchronous ones. Keeps a count of calls in flight which
+ * the HTTP handler uses to stop reading from connections while the chain is saturated.
+ */
+public class ChaincodeExecutor {
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public ChaincodeExecutor(int threads, int maxInFlight) {
+        this.executor = Executors.newFixedThreadPool(threads, new DefaultThreadFactory("chaincode", true));
+        this.maxInFlight = maxInFlight;
+    }
+
+    public ChaincodeExecutor(ServerConfig config) {
+        this(config.getChaincodeThreads(), config.getChaincodeMaxInFlight());
+    }
+
+    /**
+     * Schedule a blocking call.
+     *
+     * @param call the call, typically a {@link blockchain.Fabric} invocation
+     * @return future completed with the call's result or failure on a chaincode thread
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        inFlight.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(call.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Count an asynchronous call as in flight until its future completes; no thread waits for it.
+     *
+     * @param call starts the call, typically an asynchronous {@link blockchain.Fabric} invocation
+     * @return the call's future
+     */
+    public <T> CompletableFuture<T> track(Supplier<CompletableFuture<T>> call) {
+        inFlight.incrementAndGet();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            inFlight.decrementAndGet();
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        result.whenComplete((value, cause) -> inFlight.decrementAndGet());
+        return result;
+    }
+
+    /**
+     * @return true while at least maxInFlight calls are queued or running
+     */
+    public boolean isSaturated() {
+        return inFlight.get() >= maxInFlight;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,87 @@
+package server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+
+import java.util.Iterator;
+
+/**
+ * Writes the items of an iterator as one JSON array, a few items per chunk, so a long list is never
+ * encoded into a single buffer and the first bytes go out before the last item is encoded.
+ */
+public class ChunkedJsonArray implements ChunkedInput<ByteBuf> {
+
+    private final Iterator<?> items;
+    private final JsonCodec codec;
+    private final int itemsPerChunk;
+    private boolean started;
+    private boolean ended;
+    private long progress;
+
+    public ChunkedJsonArray(Iterator<?> items, JsonCodec codec, int itemsPerChunk) {
+        this.items = items;
+        this.codec = codec;
+        this.itemsPerChunk = itemsPerChunk;
+    }
+
+    @Override
+    public boolean isEndOfInput() {
+        return ended;
+    }
+
+    @Override
+    public void close() {
+        ended = true;
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) {
+        return readChunk(ctx.alloc());
+    }
+
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) {
+        if (ended) {
+            return null;
+        }
+        ByteBuf chunk = codec.allocate(allocator);
+        try {
+            if (!started) {
+                chunk.writeByte('[');
+            }
+            for (int i = 0; i < itemsPerChunk && items.hasNext(); i++) {
+                if (started) {
+                    chunk.writeByte(',');
+                }
+                started = true;
+                JsonCodec.write(chunk, items.next());
+                progress++;
+            }
+            if (!items.hasNext()) {
+                started = true;
+                chunk.writeByte(']');
+                ended = true;
+            }
+            return chunk;
+        } catch (RuntimeException e) {
+            chunk.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    /**
+     * @return items written so far
+     */
+    @Override
+    public long progress() {
+        return progress;
+    }
+}
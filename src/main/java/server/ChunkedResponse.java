@@ -0,0 +1,39 @@
+package server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.stream.ChunkedInput;
+
+/**
+ * Route result streamed with chunked transfer encoding instead of being encoded into one buffer. The
+ * chunks are pulled by the ChunkedWriteHandler as the connection can take them. HTTP/2 requests for
+ * one are refused with HTTP_1_1_REQUIRED.
+ */
+public final class ChunkedResponse {
+
+    /**
+     * Input whose chunks are produced over time. When it has nothing to write it returns null from
+     * readChunk, and it calls the resume callback once it has more.
+     */
+    public interface Live extends ChunkedInput<ByteBuf> {
+        /**
+         * Called by the handler once the response is written. The callback may be run from any thread.
+         */
+        void resumeWith(Runnable resume);
+    }
+
+    private final String contentType;
+    private final ChunkedInput<ByteBuf> content;
+
+    public ChunkedResponse(String contentType, ChunkedInput<ByteBuf> content) {
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ChunkedInput<ByteBuf> getContent() {
+        return content;
+    }
+}
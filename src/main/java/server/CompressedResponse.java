@@ -0,0 +1,71 @@
+package server;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * A response body encoded once and kept with its compressed forms, for responses served many times
+ * from a cache. The gzip and deflate forms are made when first asked for, so a cached value is
+ * compressed once and served many times. Shared; the bodies returned must not be modified.
+ */
+public final class CompressedResponse {
+
+    private final Object value;
+    private final byte[] identity;
+    private final ResponseCompression compression;
+    private final String etag;
+    private volatile byte[] gzip;
+    private volatile byte[] deflate;
+
+    public CompressedResponse(Object value, ResponseCompression compression) {
+        this(value, compression, null);
+    }
+
+    /**
+     * @param etag entity tag of the value, or null
+     */
+    public CompressedResponse(Object value, ResponseCompression compression, String etag) {
+        this.value = value;
+        this.identity = JSON.toJSONBytes(value);
+        this.compression = compression;
+        this.etag = etag;
+    }
+
+    /**
+     * @return the value the body was encoded from
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return encoding to send for the request's Accept-Encoding header, null for none
+     */
+    public String encoding(String acceptEncoding) {
+        return compression.negotiate(acceptEncoding, identity.length);
+    }
+
+    /**
+     * @param encoding as returned by {@link #encoding}
+     */
+    public byte[] body(String encoding) {
+        if (ResponseCompression.GZIP.equals(encoding)) {
+            byte[] body = gzip;
+            if (body == null) {
+                gzip = body = compression.compress(identity, encoding);
+            }
+            return body;
+        }
+        if (ResponseCompression.DEFLATE.equals(encoding)) {
+            byte[] body = deflate;
+            if (body == null) {
+                deflate = body = compression.compress(identity, encoding);
+            }
+            return body;
+        }
+        return identity;
+    }
+}
@@ -0,0 +1,163 @@
+package server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Server-Sent Events stream of one connection. Events are queued by the notifying thread and written
+ * when the ChunkedWriteHandler pulls them, which it does only while the connection is writable.
+ * <p>
+ * The queue is bounded: when a slow client lets it fill up, the queued events are coalesced into a
+ * single resync event telling the client to fetch its certificates again, so a slow client costs no
+ * more than queueSize events of memory.
+ */
+public class EventStream implements ChunkedResponse.Live {
+
+    public static final String CONTENT_TYPE = "text/event-stream; charset=UTF-8";
+
+    private static final byte[] OPENED = ": subscribed\n\n".getBytes(UTF_8);
+    private static final byte[] RESYNC = "event: resync\ndata: {}\n\n".getBytes(UTF_8);
+
+    private final int queueSize;
+    private final JsonCodec codec;
+    private final Consumer<EventStream> onClose;
+
+    /** Guarded by this */
+    private final ArrayDeque<Event> queue = new ArrayDeque<>();
+    private boolean opened;
+    private boolean lagged;
+    private boolean closed;
+    private Runnable resume;
+
+    private long written;
+
+    public EventStream(int queueSize, JsonCodec codec, Consumer<EventStream> onClose) {
+        this.queueSize = queueSize;
+        this.codec = codec;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Queue an event; never blocks.
+     *
+     * @return false if the event was coalesced into a resync because the client is too slow
+     */
+    public boolean offer(String name, String id, Object data) {
+        Runnable wakeUp;
+        boolean queued;
+        synchronized (this) {
+            if (closed) {
+                return true;
+            }
+            if (queue.size() >= queueSize) {
+                queue.clear();
+                lagged = true;
+                queued = false;
+            } else {
+                queue.add(new Event(name, id, data));
+                queued = true;
+            }
+            wakeUp = resume;
+        }
+        if (wakeUp != null) {
+            wakeUp.run();
+        }
+        return queued;
+    }
+
+    @Override
+    public void resumeWith(Runnable resume) {
+        synchronized (this) {
+            this.resume = resume;
+        }
+        // Writes the opening comment and whatever was queued before the response went out.
+        resume.run();
+    }
+
+    @Override
+    public synchronized boolean isEndOfInput() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+        }
+        onClose.accept(this);
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) {
+        return readChunk(ctx.alloc());
+    }
+
+    /**
+     * @return the queued events, or null to suspend until the next {@link #offer}
+     */
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) {
+        synchronized (this) {
+            if (closed || (opened && !lagged && queue.isEmpty())) {
+                return null;
+            }
+            ByteBuf chunk = codec.allocate(allocator);
+            try {
+                if (!opened) {
+                    chunk.writeBytes(OPENED);
+                    opened = true;
+                }
+                if (lagged) {
+                    chunk.writeBytes(RESYNC);
+                    lagged = false;
+                }
+                for (Event event; (event = queue.poll()) != null; ) {
+                    chunk.writeBytes(("event: " + event.name + "\nid: " + event.id + "\ndata: ").getBytes(UTF_8));
+                    JsonCodec.write(chunk, event.data);
+                    chunk.writeByte('\n').writeByte('\n');
+                    written++;
+                }
+                return chunk;
+            } catch (RuntimeException e) {
+                chunk.release();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    /**
+     * @return events written so far
+     */
+    @Override
+    public synchronized long progress() {
+        return written;
+    }
+
+    private static final class Event {
+        final String name;
+        final String id;
+        final Object data;
+
+        Event(String name, String id, Object data) {
+            this.name = name;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
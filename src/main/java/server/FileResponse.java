@@ -0,0 +1,79 @@
+package server;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.File;
+
+/**
+ * Route result sending a region of a file. The handler opens the file when the response is written,
+ * so a response dropped with its connection holds no descriptor; it is sent with sendfile when the
+ * connection allows it.
+ */
+public final class FileResponse {
+
+    private final HttpResponseStatus status;
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final HttpHeaders headers = new DefaultHttpHeaders();
+    private long fileLength = -1;
+    private Runnable changed;
+
+    /**
+     * @param file null for a response without body, e.g. 304
+     */
+    public FileResponse(HttpResponseStatus status, File file, long offset, long length) {
+        this.status = status;
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public HttpResponseStatus getStatus() {
+        return status;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * The headers describe a file of fileLength bytes. The handler checks the opened file against it and
+     * runs changed if it differs, e.g. to drop cached metadata, before running the route again.
+     */
+    public FileResponse expectLength(long fileLength, Runnable changed) {
+        this.fileLength = fileLength;
+        this.changed = changed;
+        return this;
+    }
+
+    /**
+     * @return whether the opened file has the length the headers were made for
+     */
+    public boolean hasLength(long actualLength) {
+        return fileLength == -1 || fileLength == actualLength;
+    }
+
+    public void changed() {
+        if (changed != null) {
+            changed.run();
+        }
+    }
+
+    /**
+     * @return headers added to the response
+     */
+    public HttpHeaders headers() {
+        return headers;
+    }
+}
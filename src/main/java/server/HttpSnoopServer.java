@@ -0,0 +1,124 @@
+package server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bootstrap of the HTTP API server.
+ * <p>
+ * On Linux the native epoll transport is used when it is available, and the port is bound by several
+ * SO_REUSEPORT acceptors, each on its own boss thread, so the kernel spreads incoming connections over
+ * them. Elsewhere it falls back to NIO with a single acceptor.
+ */
+public class HttpSnoopServer {
+    private static final Log logger = LogFactory.getLog(HttpSnoopServer.class);
+
+    private final ServerConfig config;
+    private final ChannelInitializer<SocketChannel> initializer;
+    private final List<Channel> acceptors = new ArrayList<>();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+
+    public HttpSnoopServer(ServerConfig config, ChannelInitializer<SocketChannel> initializer) {
+        this.config = config;
+        this.initializer = initializer;
+    }
+
+    /**
+     * Create the server's SslContext from the configured certificate chain and key.
+     *
+     * @return context advertising h2 and http/1.1, or null when no certificate is configured
+     */
+    public static SslContext sslContext(ServerConfig config) throws SSLException {
+        String certificate = config.getSslCertificate();
+        if (certificate == null || certificate.isEmpty()) {
+            return null;
+        }
+        // ALPN needs OpenSSL on Java 8.
+        SslProvider provider = OpenSsl.isAlpnSupported() ? SslProvider.OPENSSL : SslProvider.JDK;
+        return HttpSnoopServerInitializer.configureAlpn(
+                SslContextBuilder.forServer(new File(certificate), new File(config.getSslKey()))
+                        .sslProvider(provider))
+                .build();
+    }
+
+    public void start() throws InterruptedException {
+        final boolean epoll = config.isEpollEnabled() && Epoll.isAvailable();
+        final int acceptorCount = epoll ? Math.max(1, config.getAcceptors()) : 1;
+        final int bossThreads = Math.max(acceptorCount, config.getBossThreads());
+
+        if (epoll) {
+            bossGroup = new EpollEventLoopGroup(bossThreads, new DefaultThreadFactory("boss"));
+            workerGroup = new EpollEventLoopGroup(config.getWorkerThreads(), new DefaultThreadFactory("worker"));
+        } else {
+            bossGroup = new NioEventLoopGroup(bossThreads, new DefaultThreadFactory("boss"));
+            workerGroup = new NioEventLoopGroup(config.getWorkerThreads(), new DefaultThreadFactory("worker"));
+        }
+
+        ServerBootstrap b = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, config.getBacklog())
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        new WriteBufferWaterMark(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark()))
+                .childHandler(initializer);
+        if (epoll) {
+            b.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        // Each bind registers a new server channel on the next boss event loop.
+        for (int i = 0; i < acceptorCount; i++) {
+            acceptors.add(b.bind(config.getPort()).sync().channel());
+        }
+        logger.info(String.format("Listening on port %d with %s transport and %d acceptor(s)",
+                config.getPort(), epoll ? "epoll" : "nio", acceptorCount));
+    }
+
+    /**
+     * Block until every acceptor is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        for (Channel acceptor : acceptors) {
+            acceptor.closeFuture().sync();
+        }
+    }
+
+    public void stop() {
+        for (Channel acceptor : acceptors) {
+            acceptor.close();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+    }
+}
@@ -1,41 +1,135 @@
 package server;
 
-import com.alibaba.fastjson.JSON;
-import data.AddCertificate;
-import data.GetCertificates;
+import blockchain.InvocationException;
+import com.alibaba.fastjson.JSONException;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
-import io.netty.handler.codec.http.FullHttpResponse;
-import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContentCompressor;
 import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
-import io.netty.handler.codec.http.HttpObject;
-import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.codec.http.QueryStringDecoder;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.http2.Http2ConnectionHandler;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
 
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
 import static io.netty.handler.codec.http.HttpVersion.*;
 
-public class HttpSnoopServerHandler extends SimpleChannelInboundHandler<Object> {
+/**
+ * Dispatches aggregated requests through the {@link RouteTable}. Routes may answer synchronously or
+ * with a {@link CompletionStage}; responses are queued per connection and written in request order,
+ * so pipelined requests stay correctly matched while their chaincode calls complete out of order.
+ * A {@link ChunkedResponse} is streamed instead of being encoded at once, a {@link FileResponse} is
+ * sent from its file, a {@link StatusResponse} sets a status other than 200. Bodies with a
+ * {@link ProtobufCodec protobuf encoding} are sent as protobuf to clients that prefer it in Accept.
+ * <p>
+ * Over HTTP/2 every request arrives on its own stream, converted to a {@link FullHttpRequest} carrying
+ * the stream id, and responses are written as soon as they complete instead of in order. All streams of
+ * a connection share one channel, where a streamed body would hold back every response after it, so
+ * streamed responses, streamed requests and large files are refused with HTTP_1_1_REQUIRED, telling the
+ * client to send them again over HTTP/1.1; smaller files are sent from memory.
+ * <p>
+ * The connection stops reading while it has too many unanswered requests, while its write buffer is
+ * above the high water mark, or while the {@link ChaincodeExecutor} is saturated and this connection is
+ * waiting on it. Over HTTP/1 too many is maxPending pipelined requests; over HTTP/2 it is maxStreams open
+ * streams, the limit advertised in SETTINGS_MAX_CONCURRENT_STREAMS, since every stream of the connection
+ * counts against it.
+ */
+public class HttpSnoopServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    /** Bytes read at a time from files sent without sendfile */
+    private static final int FILE_CHUNK_SIZE = 8192;
+    /** Largest file sent over HTTP/2, read into memory in one piece */
+    private static final int MAX_HTTP2_FILE = 1048576;
+
+    private final RouteTable routes;
+    private final ChaincodeExecutor executor;
+    private final JsonCodec codec;
+    private final ProtobufCodec protobuf;
+    private final ResponseCompression compression;
+    private final int maxPending;
+    private final int maxStreams;
+    /** Responses not yet written, in request order. Only touched on the channel's event loop. */
+    private final ArrayDeque<PendingResponse> pending = new ArrayDeque<>();
+    /** Set for ALPN negotiated h2, or once a cleartext connection upgraded to h2c */
+    private boolean http2;
+    /** Set while the StreamingRequestHandler holds back reads for a streamed body */
+    private boolean bodySuspended;
+
+    public HttpSnoopServerHandler(RouteTable routes, ChaincodeExecutor executor, JsonCodec codec,
+                                  ProtobufCodec protobuf, ResponseCompression compression, int maxPending,
+                                  int maxStreams, boolean http2) {
+        this.routes = routes;
+        this.executor = executor;
+        this.codec = codec;
+        this.protobuf = protobuf;
+        this.compression = compression;
+        this.maxPending = maxPending;
+        this.maxStreams = maxStreams;
+        this.http2 = http2;
+    }
 
-    private HttpRequest request;
-    private Object responce;
-    /** Buffer that stores the response content */
-    private final StringBuilder buf = new StringBuilder();
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof HttpServerUpgradeHandler.UpgradeEvent) {
+            // h2c: the request that carried the Upgrade header is answered on stream 1.
+            HttpServerUpgradeHandler.UpgradeEvent upgrade = (HttpServerUpgradeHandler.UpgradeEvent) evt;
+            http2 = true;
+            // HTTP/2 responses are compressed here; the HTTP/1 compressor never saw the upgrade request.
+            if (ctx.pipeline().get(HttpContentCompressor.class) != null) {
+                ctx.pipeline().remove(HttpContentCompressor.class);
+            }
+            FullHttpRequest request = upgrade.upgradeRequest();
+            request.headers().setInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), 1);
+            try {
+                channelRead0(ctx, request);
+            } finally {
+                upgrade.release();
+            }
+            ctx.flush();
+            return;
+        }
+        if (evt instanceof StreamingRequestHandler.ReadEvent) {
+            bodySuspended = evt == StreamingRequestHandler.ReadEvent.SUSPENDED;
+            updateAutoRead(ctx);
+            return;
+        }
+        super.userEventTriggered(ctx, evt);
+    }
 
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
@@ -43,82 +137,286 @@ public class HttpSnoopServerHandler extends SimpleChannelInboundHandler<Object>
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
-        if (msg instanceof HttpRequest) {
-            HttpRequest request = this.request = (HttpRequest) msg;
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) {
+        PendingResponse slot = new PendingResponse(new RequestContext(msg, ctx.channel().remoteAddress()));
+        pending.add(slot);
 
-            if (HttpUtil.is100ContinueExpected(request)) {
-                send100Continue(ctx);
+        Object responce = dispatch(slot);
+        if (responce instanceof CompletableFuture && ((CompletableFuture<?>) responce).isDone()) {
+            try {
+                slot.complete(OK, ((CompletableFuture<?>) responce).join());
+            } catch (CompletionException | CancellationException e) {
+                slot.fail(e);
             }
-
-            if (request.uri().endsWith("add-certificate")) responce = new AddCertificate();
-            else if (request.uri().endsWith("get-certificates")) responce = new GetCertificates();
-
-            appendDecoderResult(buf, request);
+        } else if (responce instanceof CompletionStage) {
+            ((CompletionStage<?>) responce).whenComplete((result, cause) ->
+                    ctx.executor().execute(() -> {
+                        if (cause != null) {
+                            slot.fail(cause);
+                        } else {
+                            slot.complete(OK, result);
+                        }
+                        writeCompleted(ctx);
+                        ctx.flush();
+                    }));
+        } else if (!slot.done) {
+            slot.complete(OK, responce);
         }
 
-        if (msg instanceof HttpContent) {
-            HttpContent httpContent = (HttpContent) msg;
+        writeCompleted(ctx);
+    }
 
-            ByteBuf content = httpContent.content();
-            if (content.isReadable()) {
-                if (responce instanceof AddCertificate) {
-                    responce = JSON.parseObject(content.toString(CharsetUtil.UTF_8), AddCertificate.class);
-                } else if (responce instanceof GetCertificates) {
-                    ((GetCertificates) responce).getCertificates().add(
-                            new GetCertificates.CertificateItem("Cert6.png", "Test 1"));
-                    ((GetCertificates) responce).getCertificates().add(
-                            new GetCertificates.CertificateItem("Cert10.png", "Test 2"));
-                    ((GetCertificates) responce).getCertificates().add(
-                            new GetCertificates.CertificateItem("Cert3.png", "Test 5"));
-                }
-                System.out.println(responce.toString());
+    /**
+     * Run the route for the request. Errors found before the route returns complete the slot directly.
+     * The request content is released when channelRead0 returns, so routes read it synchronously.
+     */
+    private Object dispatch(PendingResponse slot) {
+        RequestContext request = slot.request;
+        FullHttpRequest msg = request.getRequest();
+
+        if (!msg.decoderResult().isSuccess()) {
+            slot.complete(BAD_REQUEST, null);
+            return null;
+        }
 
-                buf.append(JSON.toJSONString(responce));
+        Route route = routes.lookup(msg.method(), request.getPath());
+        if (route == null) {
+            Set<String> allowed = routes.allowedMethods(request.getPath());
+            if (allowed.isEmpty()) {
+                slot.complete(NOT_FOUND, null);
+            } else {
+                StatusResponse notAllowed = new StatusResponse(METHOD_NOT_ALLOWED, null);
+                notAllowed.headers().set(HttpHeaderNames.ALLOW, String.join(", ", allowed));
+                slot.complete(null, notAllowed);
             }
+            return null;
+        }
+        if (http2 && routes.isStreamed(msg.method(), request.getPath())) {
+            // Refused before the route runs, so nothing of the body is submitted twice.
+            slot.requireHttp1();
+            return null;
+        }
 
-            if (msg instanceof LastHttpContent) {
+        try {
+            return route.handle(request);
+        } catch (Exception e) {
+            slot.fail(e);
+            return null;
+        }
+    }
 
-                LastHttpContent trailer = (LastHttpContent) msg;
-                if (!writeResponse(trailer, ctx)) {
-                    // If keep-alive is off, close the connection once the content is fully written.
-                    ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+    /**
+     * Write every completed response at the head of the queue, or over HTTP/2 every completed response.
+     */
+    private void writeCompleted(ChannelHandlerContext ctx) {
+        if (http2) {
+            for (Iterator<PendingResponse> it = pending.iterator(); it.hasNext(); ) {
+                PendingResponse slot = it.next();
+                if (slot.done) {
+                    it.remove();
+                    writeResponse(ctx, slot);
                 }
             }
+            updateAutoRead(ctx);
+            return;
+        }
+        while (!pending.isEmpty() && pending.peek().done) {
+            PendingResponse slot = pending.poll();
+            if (!ctx.channel().isActive()) {
+                continue;
+            }
+            if (!writeResponse(ctx, slot)) {
+                // Nothing after a closing response can be written.
+                pending.clear();
+            }
         }
+        updateAutoRead(ctx);
     }
 
-    private static void appendDecoderResult(StringBuilder buf, HttpObject o) {
-        DecoderResult result = o.decoderResult();
-        if (result.isSuccess()) {
-            return;
-        }
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        updateAutoRead(ctx);
+        super.channelWritabilityChanged(ctx);
+    }
 
-        buf.append(".. WITH DECODER FAILURE: ");
-        buf.append(result.cause());
-        buf.append("\r\n");
+    private void updateAutoRead(ChannelHandlerContext ctx) {
+        boolean overloaded = bodySuspended || pending.size() >= (http2 ? maxStreams : maxPending)
+                || !ctx.channel().isWritable() || (!pending.isEmpty() && executor.isSaturated());
+        if (ctx.channel().config().isAutoRead() == overloaded) {
+            ctx.channel().config().setAutoRead(!overloaded);
+        }
     }
 
-    private boolean writeResponse(HttpObject currentObj, ChannelHandlerContext ctx) {
-        // Decide whether to close the connection or not.
-        boolean keepAlive = HttpUtil.isKeepAlive(request);
-        // Build the response object.
-        FullHttpResponse response = new DefaultFullHttpResponse(
-                HTTP_1_1, currentObj.decoderResult().isSuccess()? OK : BAD_REQUEST,
-                Unpooled.copiedBuffer(buf.toString(), CharsetUtil.UTF_8));
+    /**
+     * @return whether the connection stays open
+     */
+    private boolean writeResponse(ChannelHandlerContext ctx, PendingResponse slot) {
+        RequestContext request = slot.request;
+        if (slot.http1Required) {
+            requireHttp1(ctx, request);
+            return true;
+        }
+        HttpResponseStatus status = slot.status;
+        Object responce = slot.responce;
+        String acceptEncoding = request.getRequest().headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+        String contentType = "application/json; charset=UTF-8";
+        String contentEncoding = null;
+        // Responses with a protobuf encoding are sent as protobuf when the client prefers it.
+        Object value = responce instanceof CompressedResponse ? ((CompressedResponse) responce).getValue() : responce;
+        boolean negotiable = ProtobufCodec.supports(value);
+        boolean binary = negotiable
+                && ProtobufCodec.isPreferred(request.getRequest().headers().get(HttpHeaderNames.ACCEPT));
+        // Encoded for this response, so compressed here over HTTP/2.
+        boolean encoded = false;
+        HttpChunkedInput chunks = null;
+        ByteBuf content;
+        FileResponse file = null;
+        RandomAccessFile raf = null;
+        if (responce instanceof FileResponse) {
+            file = (FileResponse) responce;
+            status = file.getStatus();
+            content = null;
+            if (file.getFile() != null) {
+                try {
+                    raf = new RandomAccessFile(file.getFile(), "r");
+                } catch (FileNotFoundException e) {
+                    // Removed since its metadata was read.
+                    slot.complete(NOT_FOUND, null);
+                    return writeResponse(ctx, slot);
+                }
+                try {
+                    if (!file.hasLength(raf.length())) {
+                        // Rewritten since its metadata was read: the length and ranges sent would be wrong.
+                        raf.close();
+                        file.changed();
+                        if (slot.reloaded) {
+                            slot.complete(SERVICE_UNAVAILABLE, null);
+                        } else {
+                            slot.reloaded = true;
+                            slot.done = false;
+                            Object reloaded = dispatch(slot);
+                            if (!slot.done) {
+                                slot.complete(OK, reloaded);
+                            }
+                        }
+                        return writeResponse(ctx, slot);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    try {
+                        raf.close();
+                    } catch (IOException ignored) {
+                        // Already failed.
+                    }
+                    slot.complete(INTERNAL_SERVER_ERROR, null);
+                    return writeResponse(ctx, slot);
+                }
+            }
+            if (http2 && raf != null) {
+                try (RandomAccessFile opened = raf) {
+                    raf = null;
+                    if (file.getLength() > MAX_HTTP2_FILE) {
+                        requireHttp1(ctx, request);
+                        return true;
+                    }
+                    content = readFile(ctx, opened, file);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    slot.complete(INTERNAL_SERVER_ERROR, null);
+                    return writeResponse(ctx, slot);
+                }
+            }
+        } else if (responce instanceof ChunkedResponse && http2) {
+            try {
+                // Unsubscribes an event stream, ends an export.
+                ((ChunkedResponse) responce).getContent().close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            requireHttp1(ctx, request);
+            return true;
+        } else if (responce instanceof ChunkedResponse) {
+            // Over HTTP/1 the HttpContentCompressor compresses the chunks as they are written.
+            contentType = ((ChunkedResponse) responce).getContentType();
+            chunks = new HttpChunkedInput(((ChunkedResponse) responce).getContent());
+            content = null;
+        } else if (responce == null) {
+            content = Unpooled.EMPTY_BUFFER;
+        } else if (binary) {
+            contentType = ProtobufCodec.CONTENT_TYPE;
+            content = protobuf.encode(ctx.alloc(), value);
+            encoded = true;
+        } else if (responce instanceof CompressedResponse) {
+            CompressedResponse compressed = (CompressedResponse) responce;
+            contentEncoding = compressed.encoding(acceptEncoding);
+            content = Unpooled.wrappedBuffer(compressed.body(contentEncoding));
+        } else {
+            content = codec.encode(ctx.alloc(), responce);
+            encoded = true;
+        }
+        if (encoded && http2) {
+            // Over HTTP/1 the HttpContentCompressor takes care of these.
+            contentEncoding = compression.negotiate(acceptEncoding, content.readableBytes());
+            if (contentEncoding != null) {
+                byte[] body = ByteBufUtil.getBytes(content);
+                content.release();
+                content = Unpooled.wrappedBuffer(compression.compress(body, contentEncoding));
+            }
+        }
+        HttpResponse response;
+        boolean fileBody = file != null && content == null;
+        if (fileBody) {
+            response = new DefaultHttpResponse(HTTP_1_1, status);
+            if (status != NOT_MODIFIED) {
+                HttpUtil.setContentLength(response, raf != null ? file.getLength() : 0);
+            }
+        } else if (chunks != null) {
+            response = new DefaultHttpResponse(HTTP_1_1, status);
+            HttpUtil.setTransferEncodingChunked(response, true);
+        } else {
+            response = new DefaultFullHttpResponse(HTTP_1_1, status, content);
+            if (status != NOT_MODIFIED) {
+                // Pipelined clients need the length to find the next response even without keep-alive.
+                HttpUtil.setContentLength(response, content.readableBytes());
+            }
+        }
+
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        if (contentEncoding != null) {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, contentEncoding);
+        }
+        if (compression.isEnabled()) {
+            response.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+        if (negotiable) {
+            response.headers().add(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT);
+        }
+        if (file != null) {
+            response.headers().remove(HttpHeaderNames.VARY);
+            response.headers().setAll(file.headers());
+        }
+        if (slot.headers != null) {
+            response.headers().add(slot.headers);
+        }
+        if (slot.retryAfter > 0) {
+            response.headers().set(HttpHeaderNames.RETRY_AFTER, slot.retryAfter);
+        }
 
-        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+        if (http2) {
+            // Tells HttpToHttp2ConnectionHandler which stream the response belongs to.
+            String streamId = request.getRequest().headers().get(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+            response.headers().set(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId);
+        }
 
-        if (keepAlive) {
-            // Add 'Content-Length' header only for a keep-alive connection.
-            response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        boolean keepAlive = http2 || (request.isKeepAlive() && status != BAD_REQUEST);
+        if (keepAlive && !http2) {
             // Add keep alive header as per:
             // - http://www.w3.org/Protocols/HTTP/1.1/draft-ietf-http-v11-spec-01.html#Connection
             response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
         }
 
         // Encode the cookie.
-        String cookieString = request.headers().get(HttpHeaderNames.COOKIE);
+        String cookieString = request.getRequest().headers().get(HttpHeaderNames.COOKIE);
         if (cookieString != null) {
             Set<Cookie> cookies = ServerCookieDecoder.STRICT.decode(cookieString);
             if (!cookies.isEmpty()) {
@@ -133,16 +431,85 @@ public class HttpSnoopServerHandler extends SimpleChannelInboundHandler<Object>
             response.headers().add(HttpHeaderNames.SET_COOKIE, ServerCookieEncoder.STRICT.encode("key2", "value2"));
         }
 
-        // Write the response.
-        ctx.write(response);
-        buf.delete(0, buf.length());
-
+        ChannelFuture written = ctx.write(response);
+        if (fileBody) {
+            written = writeFile(ctx, file, raf);
+        } else if (chunks != null) {
+            // Read by the ChunkedWriteHandler while the channel stays writable.
+            written = ctx.write(chunks);
+            ChunkedInput<ByteBuf> input = ((ChunkedResponse) responce).getContent();
+            if (input instanceof ChunkedResponse.Live) {
+                ChunkedWriteHandler writer = ctx.pipeline().get(ChunkedWriteHandler.class);
+                ((ChunkedResponse.Live) input).resumeWith(writer::resumeTransfer);
+            }
+        }
+        if (!keepAlive) {
+            // If keep-alive is off, close the connection once the content is fully written.
+            ctx.flush();
+            written.addListener(ChannelFutureListener.CLOSE);
+        }
         return keepAlive;
     }
 
-    private static void send100Continue(ChannelHandlerContext ctx) {
-        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, CONTINUE);
-        ctx.write(response);
+    /**
+     * Send the body of a FileResponse with sendfile where the bytes need no processing in the pipeline:
+     * TLS encrypts them, so there it is read in chunks instead.
+     */
+    private ChannelFuture writeFile(ChannelHandlerContext ctx, FileResponse file, RandomAccessFile raf) {
+        if (raf == null) {
+            return ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        if (!http2 && ctx.pipeline().get(SslHandler.class) == null) {
+            // Closes the file once sent.
+            ctx.write(new DefaultFileRegion(raf.getChannel(), file.getOffset(), file.getLength()));
+            return ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+        }
+        try {
+            return ctx.write(new HttpChunkedInput(new ChunkedNioFile(raf.getChannel(), file.getOffset(),
+                    file.getLength(), FILE_CHUNK_SIZE)));
+        } catch (IOException e) {
+            // The head is already written, only closing the connection tells the client.
+            ctx.close();
+            return ctx.newFailedFuture(e);
+        }
+    }
+
+    /**
+     * @return the region of the file of an HTTP/2 response
+     */
+    private static ByteBuf readFile(ChannelHandlerContext ctx, RandomAccessFile raf, FileResponse file)
+            throws IOException {
+        int length = (int) file.getLength();
+        ByteBuf content = ctx.alloc().buffer(length);
+        try {
+            while (content.readableBytes() < length) {
+                if (content.writeBytes(raf.getChannel(), file.getOffset() + content.readableBytes(),
+                        length - content.readableBytes()) < 0) {
+                    throw new EOFException("file shrank to " + raf.length() + " bytes: " + file.getFile());
+                }
+            }
+            return content;
+        } catch (IOException e) {
+            content.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Refuse the request's HTTP/2 stream with HTTP_1_1_REQUIRED, telling the client to send it again over
+     * HTTP/1.1.
+     */
+    private static void requireHttp1(ChannelHandlerContext ctx, RequestContext request) {
+        int streamId = request.getRequest().headers().getInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+        ChannelHandlerContext connection = ctx.pipeline().context(Http2ConnectionHandler.class);
+        ((Http2ConnectionHandler) connection.handler()).resetStream(connection, streamId,
+                Http2Error.HTTP_1_1_REQUIRED.code(), connection.newPromise());
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        pending.clear();
+        super.channelInactive(ctx);
     }
 
     @Override
@@ -150,4 +517,59 @@ public class HttpSnoopServerHandler extends SimpleChannelInboundHandler<Object>
         cause.printStackTrace();
         ctx.close();
     }
+
+    /**
+     * Response slot of one request, filled in when its route completes.
+     */
+    private static final class PendingResponse {
+        final RequestContext request;
+        boolean done;
+        HttpResponseStatus status;
+        Object responce;
+        /** Seconds, for 429 responses */
+        long retryAfter;
+        /** Set by a StatusResponse */
+        HttpHeaders headers;
+        /** Set for an HTTP/2 stream to be refused */
+        boolean http1Required;
+        /** Set once the route ran again for a file that changed under its response */
+        boolean reloaded;
+
+        PendingResponse(RequestContext request) {
+            this.request = request;
+        }
+
+        void complete(HttpResponseStatus status, Object responce) {
+            if (responce instanceof StatusResponse) {
+                headers = ((StatusResponse) responce).headers();
+                status = ((StatusResponse) responce).getStatus();
+                responce = ((StatusResponse) responce).getBody();
+            }
+            this.status = status;
+            this.responce = responce;
+            this.done = true;
+        }
+
+        void requireHttp1() {
+            http1Required = true;
+            done = true;
+        }
+
+        void fail(Throwable cause) {
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof TooManyRequestsException) {
+                retryAfter = ((TooManyRequestsException) cause).getRetryAfterSeconds();
+                complete(TOO_MANY_REQUESTS, null);
+            } else if (cause instanceof JSONException || cause instanceof IllegalArgumentException) {
+                complete(BAD_REQUEST, null);
+            } else if (cause instanceof InvocationException) {
+                complete(((InvocationException) cause).isTimeout() ? GATEWAY_TIMEOUT : BAD_GATEWAY, null);
+            } else {
+                cause.printStackTrace();
+                complete(INTERNAL_SERVER_ERROR, null);
+            }
+        }
+    }
 }
@@ -1,18 +1,69 @@
 package server;
 
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.http.HttpRequestDecoder;
-import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
 
+/**
+ * Builds the pipeline of an accepted connection. With TLS the protocol is chosen by ALPN (h2 or
+ * http/1.1); in plaintext HTTP/1.1 connections may upgrade to h2c. HTTP/2 streams are converted to
+ * and from full HTTP/1 messages, so both protocols share {@link HttpSnoopServerHandler}, which sends
+ * streamed routes back to HTTP/1.1.
+ */
 public class HttpSnoopServerInitializer extends ChannelInitializer<SocketChannel> {
 
+    /** Largest request body accepted by the aggregator */
+    private static final int MAX_CONTENT_LENGTH = 1048576;
+
     private final SslContext sslCtx;
+    private final RouteTable routes;
+    private final ChaincodeExecutor executor;
+    private final ServerConfig config;
+    private final JsonCodec codec;
+    private final ProtobufCodec protobuf;
+    private final ResponseCompression compression;
 
-    public HttpSnoopServerInitializer(SslContext sslCtx) {
+    public HttpSnoopServerInitializer(SslContext sslCtx, RouteTable routes, ChaincodeExecutor executor,
+                                      ResponseCompression compression, ServerConfig config) {
         this.sslCtx = sslCtx;
+        this.routes = routes;
+        this.executor = executor;
+        this.config = config;
+        this.codec = new JsonCodec(config.isDirectResponseBuffers());
+        this.protobuf = new ProtobufCodec(config.isDirectResponseBuffers());
+        this.compression = compression;
+    }
+
+    /**
+     * Advertise h2 and http/1.1 over ALPN. Apply to the builder of the SslContext passed in.
+     */
+    public static SslContextBuilder configureAlpn(SslContextBuilder builder) {
+        return builder.applicationProtocolConfig(new ApplicationProtocolConfig(
+                ApplicationProtocolConfig.Protocol.ALPN,
+                // NO_ADVERTISE and ACCEPT are the only modes supported by both OpenSsl and JDK providers.
+                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                ApplicationProtocolNames.HTTP_2,
+                ApplicationProtocolNames.HTTP_1_1));
     }
 
     @Override
@@ -20,13 +71,67 @@ public class HttpSnoopServerInitializer extends ChannelInitializer<SocketChannel
         ChannelPipeline p = ch.pipeline();
         if (sslCtx != null) {
             p.addLast(sslCtx.newHandler(ch.alloc()));
+            p.addLast(new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                @Override
+                protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                    if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                        configureHttp2(ctx.pipeline());
+                    } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                        configureHttp1(ctx.pipeline(), new HttpServerCodec(), null);
+                    } else {
+                        throw new IllegalStateException("unknown protocol: " + protocol);
+                    }
+                }
+            });
+        } else if (config.isH2cEnabled()) {
+            HttpServerCodec sourceCodec = new HttpServerCodec();
+            configureHttp1(p, sourceCodec, new HttpServerUpgradeHandler(sourceCodec, protocol ->
+                    AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                            ? new Http2ServerUpgradeCodec(newHttp2ConnectionHandler())
+                            : null,
+                    MAX_CONTENT_LENGTH));
+        } else {
+            configureHttp1(p, new HttpServerCodec(), null);
+        }
+    }
+
+    private void configureHttp1(ChannelPipeline p, HttpServerCodec codec, HttpServerUpgradeHandler upgradeHandler) {
+        p.addLast(codec);
+        if (upgradeHandler != null) {
+            p.addLast(upgradeHandler);
+        }
+        // Takes the bodies of streamed routes out of aggregation.
+        p.addLast(new StreamingRequestHandler(routes));
+        // The aggregator answers "Expect: 100-continue" itself, so it must sit after the encoder.
+        p.addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+        if (compression.isEnabled()) {
+            // Sees the aggregated request for its Accept-Encoding; skips pre-compressed and small responses.
+            p.addLast(compression.newHttpContentCompressor());
         }
-        p.addLast(new HttpRequestDecoder());
-        // Uncomment the following line if you don't want to handle HttpChunks.
-        //p.addLast(new HttpObjectAggregator(1048576));
-        p.addLast(new HttpResponseEncoder());
-        // Remove the following line if you don't want automatic content compression.
-        //p.addLast(new HttpContentCompressor());
-        p.addLast(new HttpSnoopServerHandler());
+        p.addLast(new ChunkedWriteHandler());
+        p.addLast(newHandler(false));
+    }
+
+    private void configureHttp2(ChannelPipeline p) {
+        // Nothing is streamed over HTTP/2, so no ChunkedWriteHandler.
+        p.addLast(newHttp2ConnectionHandler());
+        p.addLast(newHandler(true));
+    }
+
+    private HttpToHttp2ConnectionHandler newHttp2ConnectionHandler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        return new HttpToHttp2ConnectionHandlerBuilder()
+                .connection(connection)
+                .initialSettings(new Http2Settings().maxConcurrentStreams(config.getConnectionMaxStreams()))
+                .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                        .maxContentLength(MAX_CONTENT_LENGTH)
+                        .propagateSettings(false)
+                        .build())
+                .build();
+    }
+
+    private HttpSnoopServerHandler newHandler(boolean http2) {
+        return new HttpSnoopServerHandler(routes, executor, codec, protobuf, compression,
+                config.getConnectionMaxPending(), config.getConnectionMaxStreams(), http2);
     }
-}
\ No newline at end of file
+}
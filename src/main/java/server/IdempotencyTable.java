@@ -0,0 +1,170 @@
+package server;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded table of submissions by idempotency key. A request repeating the key of a submission still in
+ * flight attaches to its future, and one repeating a recent successful submission gets its result, so
+ * client retries create no new transactions. Failed submissions are forgotten at once and may be retried.
+ * <p>
+ * Each key remembers a fingerprint of its request; reusing a key for a different request is refused.
+ * <p>
+ * Only completed submissions are evicted, oldest first, once more than maxEntries are kept. Submissions in
+ * flight are never evicted, or a retry would submit again; while maxEntries of them are in flight, new
+ * keys are answered 429.
+ */
+public class IdempotencyTable {
+
+    private final long ttl;
+    private final int maxEntries;
+    /** Guarded by completed, like inFlight */
+    private final Map<String, Entry> inFlight = new HashMap<>();
+    private final Map<String, Entry> completed;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder attached = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param ttlMillis how long results of completed submissions are kept
+     */
+    public IdempotencyTable(final int maxEntries, long ttlMillis) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.completed = new LinkedHashMap<String, Entry>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public IdempotencyTable(ServerConfig config) {
+        this(config.getIdempotencyMaxEntries(), TimeUnit.SECONDS.toMillis(config.getIdempotencyTtl()));
+    }
+
+    /**
+     * Run the submission unless the key has one in flight or recently succeeded.
+     *
+     * @param fingerprint identifies the request; must be equal for every use of the key
+     * @throws IllegalArgumentException if the key was used for a different request
+     * @throws TooManyRequestsException if the key is new and maxEntries submissions are in flight
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, String fingerprint, Supplier<CompletableFuture<T>> submission) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Entry own = new Entry(fingerprint, result);
+        synchronized (completed) {
+            Entry entry = inFlight.get(key);
+            if (entry == null) {
+                entry = completed.get(key);
+            }
+            if (entry != null && !entry.isExpired(System.nanoTime(), ttl)) {
+                if (!entry.fingerprint.equals(fingerprint)) {
+                    throw new IllegalArgumentException("Idempotency-Key was already used for a different request");
+                }
+                if (entry.result.isDone()) {
+                    replayed.increment();
+                } else {
+                    attached.increment();
+                }
+                return (CompletableFuture<T>) entry.result;
+            }
+            if (inFlight.size() >= maxEntries) {
+                rejected.increment();
+                throw new TooManyRequestsException("too many submissions in flight", 1);
+            }
+            completed.remove(key);
+            inFlight.put(key, own);
+        }
+        submitted.increment();
+
+        CompletableFuture<T> submitting;
+        try {
+            submitting = submission.get();
+        } catch (RuntimeException e) {
+            forget(key, own);
+            throw e;
+        }
+        submitting.whenComplete((value, cause) -> {
+            if (cause != null) {
+                forget(key, own);
+                result.completeExceptionally(cause);
+            } else {
+                own.completedAt = System.nanoTime();
+                completed(key, own);
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Drop the key, so its next request is submitted again; for submissions that failed after their
+     * future completed.
+     */
+    public void forget(String key) {
+        synchronized (completed) {
+            inFlight.remove(key);
+            completed.remove(key);
+        }
+    }
+
+    private void forget(String key, Entry entry) {
+        synchronized (completed) {
+            inFlight.remove(key, entry);
+            completed.remove(key, entry);
+        }
+    }
+
+    /**
+     * Make the entry evictable.
+     */
+    private void completed(String key, Entry entry) {
+        synchronized (completed) {
+            if (inFlight.remove(key, entry)) {
+                completed.put(key, entry);
+            }
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("idempotency.entries", () -> {
+            synchronized (completed) {
+                return inFlight.size() + completed.size();
+            }
+        });
+        metrics.register("idempotency.inFlight", () -> {
+            synchronized (completed) {
+                return inFlight.size();
+            }
+        });
+        metrics.register("idempotency.submitted", submitted::sum);
+        metrics.register("idempotency.attached", attached::sum);
+        metrics.register("idempotency.replayed", replayed::sum);
+        metrics.register("idempotency.rejected", rejected::sum);
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final CompletableFuture<?> result;
+        /** System.nanoTime() of successful completion */
+        volatile long completedAt;
+
+        Entry(String fingerprint, CompletableFuture<?> result) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+
+        boolean isExpired(long now, long ttl) {
+            return result.isDone() && now - completedAt > ttl;
+        }
+    }
+}
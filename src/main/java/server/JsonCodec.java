@@ -0,0 +1,85 @@
+package server;
+
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * JSON encoding straight between DTOs and Netty buffers. Responses are written into a buffer from the
+ * channel's (pooled) allocator and request bodies are parsed in place, without intermediate Strings.
+ */
+public class JsonCodec {
+
+    private final boolean directBuffers;
+
+    /**
+     * @param directBuffers allocate response buffers off-heap, which saves the copy into a direct buffer
+     *                      on socket write
+     */
+    public JsonCodec(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    /**
+     * Serialize a value into a new buffer. The caller owns the returned buffer.
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, Object value) {
+        ByteBuf buf = allocate(alloc);
+        try {
+            write(buf, value);
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return empty buffer of the kind responses are encoded into
+     */
+    public ByteBuf allocate(ByteBufAllocator alloc) {
+        return directBuffers ? alloc.directBuffer() : alloc.heapBuffer();
+    }
+
+    /**
+     * Append the JSON of a value to a buffer.
+     */
+    public static void write(ByteBuf buf, Object value) {
+        try (OutputStream out = new ByteBufOutputStream(buf)) {
+            JSON.writeJSONString(out, UTF_8, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse the readable bytes of a buffer without moving its reader index.
+     *
+     * @return parsed value, or null for an empty buffer
+     */
+    public static <T> T decode(ByteBuf content, Type type) {
+        if (!content.isReadable()) {
+            return null;
+        }
+        if (content.hasArray()) {
+            return JSON.parseObject(content.array(), content.arrayOffset() + content.readerIndex(),
+                    content.readableBytes(), UTF_8, type);
+        }
+        // Direct or composite (aggregated) content.
+        try (InputStream in = new ByteBufInputStream(content.duplicate())) {
+            return JSON.parseObject(in, UTF_8, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package server;
+
+import blockchain.CertificateRegistry;
+import blockchain.CertificateWrite;
+import data.GetCertificates;
+import data.LedgerExportEnd;
+import data.LedgerRecord;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Export of every certificate write in a range of committed blocks, read block by block with block
+ * queries and written as NDJSON {@link LedgerRecord}s, then a {@link LedgerExportEnd}. The queries run on
+ * an executor of the exports, whose few threads bound how many exports read at once; the others queue.
+ * Only the block being written and the next one, fetched meanwhile, are held, whatever the range.
+ * <p>
+ * Every record carries the cursor of the position after it, so an interrupted export resumes from the
+ * last line received; the cursor of the end line continues the export with later blocks.
+ */
+public class LedgerExport implements ChunkedResponse.Live {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    /** Blocks scanned by one fetch while they hold no certificate writes */
+    private static final int BLOCKS_PER_FETCH = 64;
+
+    private final CertificateRegistry registry;
+    private final ChaincodeExecutor executor;
+    private final JsonCodec codec;
+    /** Last block asked for, or -1 for the last block when the export starts */
+    private final long toBlock;
+
+    /** Guarded by this */
+    private long nextBlock;
+    private int skip;
+    /** Last block of the export, -1 until the first fetch found the ledger height */
+    private long lastBlock = -1;
+    private Fetched fetched;
+    private Throwable failure;
+    private boolean fetching;
+    private boolean finished;
+    private boolean closed;
+    private Runnable resume;
+    private long written;
+
+    /** Thread in readChunk, which must not be resumed from within */
+    private volatile Thread reading;
+
+    /**
+     * @param cursor position to start from, or null to start at fromBlock
+     * @param toBlock last block to export, or -1 for the last committed block
+     */
+    public LedgerExport(CertificateRegistry registry, ChaincodeExecutor executor, JsonCodec codec,
+                        long fromBlock, String cursor, long toBlock) {
+        this.registry = registry;
+        this.executor = executor;
+        this.codec = codec;
+        this.toBlock = toBlock;
+        if (cursor != null) {
+            long[] position = decodeCursor(cursor);
+            this.nextBlock = position[0];
+            this.skip = (int) position[1];
+        } else {
+            this.nextBlock = fromBlock;
+        }
+    }
+
+    static String encodeCursor(long block, int skip) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((block + ":" + skip).getBytes(US_ASCII));
+    }
+
+    /**
+     * @return block and records of it to skip
+     */
+    static long[] decodeCursor(String cursor) {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), US_ASCII);
+        int colon = position.indexOf(':');
+        if (colon == -1) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        long block = Long.parseLong(position.substring(0, colon));
+        int skip = Integer.parseInt(position.substring(colon + 1));
+        if (block < 0 || skip < 0) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        return new long[]{block, skip};
+    }
+
+    @Override
+    public void resumeWith(Runnable resume) {
+        synchronized (this) {
+            this.resume = resume;
+        }
+        resume.run();
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) {
+        return readChunk(ctx.alloc());
+    }
+
+    /**
+     * @return the records of the fetched block, or null to suspend until a block with records is fetched
+     */
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) {
+        reading = Thread.currentThread();
+        try {
+            while (true) {
+                ByteBuf chunk = writeFetched(allocator);
+                // With a chunk, reads the next block while this one is written.
+                boolean started = fetch();
+                if (chunk != null || !started) {
+                    return chunk;
+                }
+                // The fetch may have completed at once.
+            }
+        } finally {
+            reading = null;
+        }
+    }
+
+    private synchronized ByteBuf writeFetched(ByteBufAllocator allocator) {
+        if (closed || finished) {
+            return null;
+        }
+        boolean end = failure != null || (lastBlock >= 0 && nextBlock > lastBlock);
+        if (fetched == null && !end) {
+            return null;
+        }
+        ByteBuf chunk = codec.allocate(allocator);
+        try {
+            if (fetched != null) {
+                List<CertificateWrite> writes = fetched.writes;
+                for (int i = fetched.block == nextBlock ? skip : 0; i < writes.size(); i++) {
+                    CertificateWrite write = writes.get(i);
+                    LedgerRecord record = toRecord(write);
+                    record.setCursor(i + 1 < writes.size() ? encodeCursor(fetched.block, i + 1)
+                            : encodeCursor(fetched.block + 1, 0));
+                    JsonCodec.write(chunk, record);
+                    chunk.writeByte('\n');
+                    written++;
+                }
+                nextBlock = fetched.block + 1;
+                skip = 0;
+                fetched = null;
+                end = failure != null || nextBlock > lastBlock;
+            }
+            if (end) {
+                String error = failure == null ? null
+                        : failure.getMessage() != null ? failure.getMessage() : failure.getClass().getSimpleName();
+                long exported = lastBlock >= 0 ? Math.min(nextBlock - 1, lastBlock) : nextBlock - 1;
+                JsonCodec.write(chunk, new LedgerExportEnd(exported, encodeCursor(nextBlock, skip), error));
+                chunk.writeByte('\n');
+                finished = true;
+            }
+            if (!chunk.isReadable()) {
+                // An empty chunk would end the response.
+                chunk.release();
+                return null;
+            }
+            return chunk;
+        } catch (RuntimeException e) {
+            chunk.release();
+            throw e;
+        }
+    }
+
+    private static LedgerRecord toRecord(CertificateWrite write) {
+        LedgerRecord record = new LedgerRecord();
+        record.setBlock_number(write.getBlockNumber());
+        record.setTransaction_id(write.getTransactionId());
+        record.setUser_id(write.getUserId());
+        record.setCertificate_id(write.getCertificateId());
+        GetCertificates.CertificateItem item = write.getItem();
+        if (item != null) {
+            record.setCert_img(item.getCert_img());
+            record.setCert_title(item.getCert_title());
+        }
+        record.setDeleted(write.isDelete());
+        return record;
+    }
+
+    /**
+     * Start fetching the next block with certificate writes unless one is fetched or being fetched.
+     *
+     * @return whether a fetch was started
+     */
+    private boolean fetch() {
+        long from;
+        long last;
+        synchronized (this) {
+            if (closed || finished || fetching || fetched != null || failure != null
+                    || (lastBlock >= 0 && nextBlock > lastBlock)) {
+                return false;
+            }
+            fetching = true;
+            from = nextBlock;
+            last = lastBlock;
+        }
+        executor.submit(() -> {
+            long end = last;
+            if (end < 0) {
+                long height = registry.getBlockHeight();
+                end = toBlock < 0 ? height - 1 : Math.min(toBlock, height - 1);
+            }
+            long block = from;
+            for (; block <= end && block < from + BLOCKS_PER_FETCH; block++) {
+                List<CertificateWrite> writes = registry.getCertificateWrites(block);
+                if (!writes.isEmpty()) {
+                    return new Fetched(block, writes, end);
+                }
+            }
+            // Nothing up to here; an empty fetch only moves the position.
+            return new Fetched(block - 1, Collections.emptyList(), end);
+        }).whenComplete(this::fetched);
+        return true;
+    }
+
+    private void fetched(Fetched result, Throwable cause) {
+        Runnable wakeUp;
+        synchronized (this) {
+            fetching = false;
+            if (cause != null) {
+                failure = cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+            } else {
+                lastBlock = result.lastBlock;
+                fetched = result;
+            }
+            wakeUp = resume;
+        }
+        // Within readChunk the result is picked up on return.
+        if (wakeUp != null && reading != Thread.currentThread()) {
+            wakeUp.run();
+        }
+    }
+
+    @Override
+    public synchronized boolean isEndOfInput() {
+        return closed || finished;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        fetched = null;
+    }
+
+    @Override
+    public long length() {
+        return -1;
+    }
+
+    /**
+     * @return records written so far
+     */
+    @Override
+    public synchronized long progress() {
+        return written;
+    }
+
+    private static final class Fetched {
+        /** Block of the writes, or the last block scanned */
+        final long block;
+        final List<CertificateWrite> writes;
+        final long lastBlock;
+
+        Fetched(long block, List<CertificateWrite> writes, long lastBlock) {
+            this.block = block;
+            this.writes = writes;
+            this.lastBlock = lastBlock;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Named counters and gauges of the server, served as JSON by the /metrics route.
+ */
+public class Metrics {
+
+    private final Map<String, Supplier<?>> values = new LinkedHashMap<>();
+
+    /**
+     * Register a value read on every snapshot.
+     */
+    public synchronized Metrics register(String name, Supplier<?> value) {
+        if (values.put(name, value) != null) {
+            throw new IllegalArgumentException(String.format("Metric %s is already registered", name));
+        }
+        return this;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>(values.size());
+        for (Map.Entry<String, Supplier<?>> value : values.entrySet()) {
+            snapshot.put(value.getKey(), value.getValue().get());
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,294 @@
+package server;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import data.AddCertificate;
+import data.GetCertificates;
+import data.TransactionStatus;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Protobuf encoding of the API DTOs, the messages of src/main/proto/certificates.proto. Written
+ * directly with the protobuf runtime instead of through the generated data.CertificatesProto, so the
+ * DTOs stay the single model of both encodings; ProtobufCodecTest checks both directions against the
+ * generated classes. Responses are sized first and written into one buffer.
+ */
+public class ProtobufCodec {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+    private static final String ALTERNATE_CONTENT_TYPE = "application/protobuf";
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    private final boolean directBuffers;
+
+    /**
+     * @param directBuffers allocate response buffers off-heap, see {@link JsonCodec}
+     */
+    public ProtobufCodec(boolean directBuffers) {
+        this.directBuffers = directBuffers;
+    }
+
+    /**
+     * @return whether a request body of this Content-Type is protobuf
+     */
+    public static boolean isProtobuf(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = mediaType(contentType);
+        return mediaType.equals(CONTENT_TYPE) || mediaType.equals(ALTERNATE_CONTENT_TYPE);
+    }
+
+    /**
+     * @return whether the Accept header names protobuf with a higher quality than JSON. Wildcards only
+     * ever select JSON, the default.
+     */
+    public static boolean isPreferred(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        float protobuf = 0;
+        float json = 0;
+        for (String range : accept.split(",")) {
+            String mediaType = mediaType(range);
+            float q = quality(range);
+            if (mediaType.equals(CONTENT_TYPE) || mediaType.equals(ALTERNATE_CONTENT_TYPE)) {
+                protobuf = Math.max(protobuf, q);
+            } else if (mediaType.equals(JSON_CONTENT_TYPE)) {
+                json = Math.max(json, q);
+            }
+        }
+        return protobuf > 0 && protobuf >= json;
+    }
+
+    private static String mediaType(String value) {
+        int semicolon = value.indexOf(';');
+        return (semicolon == -1 ? value : value.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static float quality(String range) {
+        for (String parameter : range.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return whether values of this kind have a protobuf encoding
+     */
+    public static boolean supports(Object value) {
+        return value instanceof GetCertificates || value instanceof AddCertificate
+                || value instanceof TransactionStatus;
+    }
+
+    /**
+     * Serialize a value into a new buffer. The caller owns the returned buffer.
+     *
+     * @throws IllegalArgumentException if the value is not {@link #supports supported}
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, Object value) {
+        int[] itemSizes = null;
+        int size;
+        if (value instanceof GetCertificates) {
+            List<GetCertificates.CertificateItem> certificates = ((GetCertificates) value).getCertificates();
+            itemSizes = new int[certificates.size()];
+            for (int i = 0; i < itemSizes.length; i++) {
+                itemSizes[i] = itemSize(certificates.get(i));
+            }
+            size = getCertificatesSize((GetCertificates) value, itemSizes);
+        } else if (value instanceof AddCertificate) {
+            AddCertificate certificate = (AddCertificate) value;
+            size = stringSize(1, certificate.getUser_id()) + stringSize(2, certificate.getCertificate_id());
+        } else if (value instanceof TransactionStatus) {
+            TransactionStatus status = (TransactionStatus) value;
+            size = stringSize(1, status.getTransaction_id()) + stringSize(2, status.getStatus())
+                    + (status.getUpdated() == 0 ? 0 : CodedOutputStream.computeInt64Size(3, status.getUpdated()));
+        } else {
+            throw new IllegalArgumentException("no protobuf encoding for " + value.getClass().getName());
+        }
+
+        ByteBuf buf = directBuffers ? alloc.directBuffer(size) : alloc.heapBuffer(size);
+        try {
+            ByteBuffer target = buf.nioBuffer(buf.writerIndex(), size);
+            CodedOutputStream out = CodedOutputStream.newInstance(target);
+            if (value instanceof GetCertificates) {
+                writeGetCertificates(out, (GetCertificates) value, itemSizes);
+            } else if (value instanceof AddCertificate) {
+                AddCertificate certificate = (AddCertificate) value;
+                writeString(out, 1, certificate.getUser_id());
+                writeString(out, 2, certificate.getCertificate_id());
+            } else {
+                TransactionStatus status = (TransactionStatus) value;
+                writeString(out, 1, status.getTransaction_id());
+                writeString(out, 2, status.getStatus());
+                if (status.getUpdated() != 0) {
+                    out.writeInt64(3, status.getUpdated());
+                }
+            }
+            out.flush();
+            buf.writerIndex(buf.writerIndex() + size);
+            return buf;
+        } catch (IOException e) {
+            buf.release();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    private static int getCertificatesSize(GetCertificates value, int[] itemSizes) {
+        int size = stringSize(2, value.getNext_cursor());
+        for (int itemSize : itemSizes) {
+            size += CodedOutputStream.computeTagSize(1) + CodedOutputStream.computeUInt32SizeNoTag(itemSize)
+                    + itemSize;
+        }
+        return size;
+    }
+
+    private static int itemSize(GetCertificates.CertificateItem item) {
+        return stringSize(1, item.getCert_img()) + stringSize(2, item.getCert_title());
+    }
+
+    private static void writeGetCertificates(CodedOutputStream out, GetCertificates value, int[] itemSizes)
+            throws IOException {
+        List<GetCertificates.CertificateItem> certificates = value.getCertificates();
+        for (int i = 0; i < itemSizes.length; i++) {
+            GetCertificates.CertificateItem item = certificates.get(i);
+            out.writeTag(1, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(itemSizes[i]);
+            writeString(out, 1, item.getCert_img());
+            writeString(out, 2, item.getCert_title());
+        }
+        writeString(out, 2, value.getNext_cursor());
+    }
+
+    /**
+     * proto3 leaves out empty strings, which read back as null.
+     */
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static void writeString(CodedOutputStream out, int field, String value) throws IOException {
+        if (value != null && !value.isEmpty()) {
+            out.writeString(field, value);
+        }
+    }
+
+    /**
+     * Parse the readable bytes of a buffer without moving its reader index.
+     *
+     * @return parsed value, or null for an empty buffer
+     * @throws IllegalArgumentException if the bytes are not a valid message, or the type has no protobuf encoding
+     */
+    public static <T> T decode(ByteBuf content, Class<T> type) {
+        if (!content.isReadable()) {
+            return null;
+        }
+        CodedInputStream in = CodedInputStream.newInstance(content.nioBuffer());
+        try {
+            Object value;
+            if (type == AddCertificate.class) {
+                value = readAddCertificate(in);
+            } else if (type == GetCertificates.class) {
+                value = readGetCertificates(in);
+            } else if (type == TransactionStatus.class) {
+                value = readTransactionStatus(in);
+            } else {
+                throw new IllegalArgumentException("no protobuf encoding for " + type.getName());
+            }
+            return type.cast(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid protobuf body", e);
+        }
+    }
+
+    private static AddCertificate readAddCertificate(CodedInputStream in) throws IOException {
+        AddCertificate certificate = new AddCertificate();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag) {
+                case 1 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    certificate.setUser_id(in.readStringRequireUtf8());
+                    break;
+                case 2 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    certificate.setCertificate_id(in.readStringRequireUtf8());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return certificate;
+    }
+
+    private static GetCertificates readGetCertificates(CodedInputStream in) throws IOException {
+        GetCertificates certificates = new GetCertificates();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag) {
+                case 1 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    certificates.getCertificates().add(readItem(in));
+                    in.popLimit(limit);
+                    break;
+                case 2 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    certificates.setNext_cursor(in.readStringRequireUtf8());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return certificates;
+    }
+
+    private static GetCertificates.CertificateItem readItem(CodedInputStream in) throws IOException {
+        GetCertificates.CertificateItem item = new GetCertificates.CertificateItem();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag) {
+                case 1 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    item.setCert_img(in.readStringRequireUtf8());
+                    break;
+                case 2 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    item.setCert_title(in.readStringRequireUtf8());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return item;
+    }
+
+    private static TransactionStatus readTransactionStatus(CodedInputStream in) throws IOException {
+        TransactionStatus status = new TransactionStatus();
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag) {
+                case 1 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    status.setTransaction_id(in.readStringRequireUtf8());
+                    break;
+                case 2 << 3 | WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                    status.setStatus(in.readStringRequireUtf8());
+                    break;
+                case 3 << 3 | WireFormat.WIRETYPE_VARINT:
+                    status.setUpdated(in.readInt64());
+                    break;
+                default:
+                    in.skipField(tag);
+            }
+        }
+        return status;
+    }
+}
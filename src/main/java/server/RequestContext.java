@@ -0,0 +1,99 @@
+package server;
+
+import com.alibaba.fastjson.JSONObject;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one HTTP request. A new instance is created for every request read from the channel,
+ * so pipelined requests on a keep-alive connection never share anything.
+ */
+public class RequestContext {
+
+    private final FullHttpRequest request;
+    private final QueryStringDecoder decoder;
+    private final boolean keepAlive;
+    private final String client;
+    private JSONObject jsonBody;
+    /** The body decoded by {@link #getBody} */
+    private Object body;
+
+    RequestContext(FullHttpRequest request, SocketAddress remoteAddress) {
+        this.request = request;
+        this.decoder = new QueryStringDecoder(request.uri());
+        this.keepAlive = HttpUtil.isKeepAlive(request);
+        this.client = remoteAddress instanceof InetSocketAddress
+                ? ((InetSocketAddress) remoteAddress).getAddress().getHostAddress() : String.valueOf(remoteAddress);
+    }
+
+    public FullHttpRequest getRequest() {
+        return request;
+    }
+
+    public String getPath() {
+        return decoder.path();
+    }
+
+    public Map<String, List<String>> getParameters() {
+        return decoder.parameters();
+    }
+
+    /**
+     * @return first value of the query string parameter, or null if absent
+     */
+    public String getParameter(String name) {
+        List<String> values = decoder.parameters().get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return whether the body is protobuf rather than JSON
+     */
+    public boolean isProtobuf() {
+        return ProtobufCodec.isProtobuf(request.headers().get(HttpHeaderNames.CONTENT_TYPE));
+    }
+
+    /**
+     * @return the body decoded as JSON or protobuf, following its Content-Type, decoded once however often
+     * it is asked for, or null if empty
+     */
+    public <T> T getBody(Class<T> type) {
+        if (!type.isInstance(body)) {
+            body = isProtobuf() ? ProtobufCodec.decode(request.content(), type)
+                    : JsonCodec.decode(request.content(), type);
+        }
+        return type.cast(body);
+    }
+
+    /**
+     * @return the body parsed as a JSON object, parsed once however often it is asked for, or null if empty
+     * or not JSON
+     */
+    public JSONObject getJsonBody() {
+        if (isProtobuf()) {
+            return null;
+        }
+        if (jsonBody == null) {
+            jsonBody = JsonCodec.decode(request.content(), JSONObject.class);
+        }
+        return jsonBody;
+    }
+
+    /**
+     * @return address of the client's connection, which unlike the request it cannot choose freely
+     */
+    public String getClient() {
+        return client;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+}
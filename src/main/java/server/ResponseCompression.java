@@ -0,0 +1,133 @@
+package server;
+
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content-Encoding negotiation shared by the HTTP/1 {@link HttpContentCompressor}, the pre-compressed
+ * bodies of {@link CompressedResponse} and the HTTP/2 responses compressed by
+ * {@link HttpSnoopServerHandler}. Bodies shorter than the minimum size are sent as they are: the
+ * compression headers would cost about as much as they save.
+ */
+public class ResponseCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private final boolean enabled;
+    private final int minSize;
+    private final int level;
+
+    public ResponseCompression(boolean enabled, int minSize, int level) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.level = level;
+    }
+
+    public ResponseCompression(ServerConfig config) {
+        this(config.isCompressionEnabled(), config.getCompressionMinSize(), config.getCompressionLevel());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Pick the encoding of a body from the request's Accept-Encoding header. gzip wins a tie.
+     *
+     * @return gzip, deflate, or null to send the body uncompressed
+     */
+    public String negotiate(String acceptEncoding, int length) {
+        if (!enabled || acceptEncoding == null || length < minSize) {
+            return null;
+        }
+        float gzip = -1f;
+        float deflate = -1f;
+        float any = -1f;
+        for (String coding : acceptEncoding.split(",")) {
+            float q = 1f;
+            int semicolon = coding.indexOf(';');
+            if (semicolon != -1) {
+                String parameter = coding.substring(semicolon + 1).trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0f;
+                    }
+                }
+                coding = coding.substring(0, semicolon);
+            }
+            coding = coding.trim();
+            if (coding.equalsIgnoreCase(GZIP)) {
+                gzip = q;
+            } else if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * @param encoding gzip or deflate (zlib format, as HTTP defines it)
+     */
+    public byte[] compress(byte[] content, String encoding) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+        // The streams' own deflaters are released on close; only their level is changed.
+        try (OutputStream out = GZIP.equals(encoding)
+                ? new GZIPOutputStream(bytes) {{ def.setLevel(level); }}
+                : new DeflaterOutputStream(bytes) {{ def.setLevel(level); }}) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * HTTP/1 compressor of everything not sent through a pre-compressed body, including streamed
+     * responses. It leaves alone responses that already carry a Content-Encoding, event streams, files
+     * and full responses below the minimum size.
+     */
+    public HttpContentCompressor newHttpContentCompressor() {
+        return new HttpContentCompressor(level) {
+            @Override
+            protected Result beginEncode(HttpResponse response, String acceptEncoding) throws Exception {
+                String contentType = response.headers().get(HttpHeaderNames.CONTENT_TYPE);
+                if (contentType != null && contentType.startsWith("text/event-stream")) {
+                    // Events must reach the client as they are written, not when the deflater fills up.
+                    return null;
+                }
+                if (!(response instanceof HttpContent) && HttpUtil.isContentLengthSet(response)) {
+                    // A FileResponse: the body may follow as a FileRegion, which cannot be compressed.
+                    return null;
+                }
+                if (response instanceof HttpContent && ((HttpContent) response).content().readableBytes() < minSize) {
+                    return null;
+                }
+                return super.beginEncode(response, acceptEncoding);
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package server;
+
+/**
+ * A single endpoint of the HTTP API. Routes are registered once in a {@link RouteTable}
+ * and shared by every connection, so implementations must not keep per-request state.
+ */
+@FunctionalInterface
+public interface Route {
+
+    /**
+     * Handle a fully aggregated request.
+     *
+     * @param request per-request state
+     * @return response object serialized as the JSON body, or null for an empty body
+     * @throws Exception any failure; mapped to an error status by the handler
+     */
+    Object handle(RequestContext request) throws Exception;
+}
@@ -0,0 +1,110 @@
+package server;
+
+import io.netty.handler.codec.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Table of (path, method) to {@link Route}. Paths match exactly, except paths registered with a
+ * trailing "/*", which match every path below them, e.g. "/tx/*" matches "/tx/abc". Built once at
+ * startup and then only read, so a single instance is shared by all channels without synchronization.
+ * <p>
+ * Streamed routes receive a {@link StreamedRequest}, whose body they read as it arrives.
+ */
+public class RouteTable {
+
+    private static final String WILDCARD = "/*";
+
+    private final Map<String, Map<HttpMethod, Route>> routes = new HashMap<>();
+    /** Prefixes of the wildcard paths, including their trailing '/' */
+    private final List<String> prefixes = new ArrayList<>();
+    /** "METHOD path" of the streamed routes */
+    private final Set<String> streamed = new HashSet<>();
+
+    public RouteTable add(HttpMethod method, String path, Route route) {
+        if (path.endsWith(WILDCARD)) {
+            String prefix = path.substring(0, path.length() - 1);
+            if (!prefixes.contains(prefix)) {
+                prefixes.add(prefix);
+            }
+        }
+        Map<HttpMethod, Route> byMethod = routes.get(path);
+        if (byMethod == null) {
+            byMethod = new HashMap<>(4);
+            routes.put(path, byMethod);
+        }
+        if (byMethod.put(method, route) != null) {
+            throw new IllegalArgumentException(String.format("Route %s %s is already registered", method, path));
+        }
+        return this;
+    }
+
+    public RouteTable get(String path, Route route) {
+        return add(HttpMethod.GET, path, route);
+    }
+
+    public RouteTable post(String path, Route route) {
+        return add(HttpMethod.POST, path, route);
+    }
+
+    /**
+     * Register a POST route whose request body is streamed to it instead of aggregated. Exact paths only.
+     */
+    public RouteTable postStreamed(String path, Route route) {
+        post(path, route);
+        streamed.add(HttpMethod.POST + " " + path);
+        return this;
+    }
+
+    /**
+     * @return whether requests with this method and path go to a streamed route
+     */
+    public boolean isStreamed(HttpMethod method, String path) {
+        return !streamed.isEmpty() && streamed.contains(method + " " + path);
+    }
+
+    /**
+     * @return route registered for the path and method, or null
+     */
+    public Route lookup(HttpMethod method, String path) {
+        Map<HttpMethod, Route> byMethod = routes.get(match(path));
+        return byMethod == null ? null : byMethod.get(method);
+    }
+
+    /**
+     * @return names of the methods registered for the path, sorted, for the Allow header of a 405; empty if none
+     */
+    public Set<String> allowedMethods(String path) {
+        Map<HttpMethod, Route> byMethod = routes.get(match(path));
+        if (byMethod == null) {
+            return Collections.emptySet();
+        }
+        Set<String> methods = new TreeSet<>();
+        for (HttpMethod method : byMethod.keySet()) {
+            methods.add(method.name());
+        }
+        return methods;
+    }
+
+    /**
+     * @return the registered path matching the request path
+     */
+    private String match(String path) {
+        if (routes.containsKey(path)) {
+            return path;
+        }
+        for (String prefix : prefixes) {
+            if (path.length() > prefix.length() && path.startsWith(prefix)) {
+                return prefix + '*';
+            }
+        }
+        return path;
+    }
+}
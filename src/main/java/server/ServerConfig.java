@@ -0,0 +1,506 @@
+package server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Configuration of the HTTP API server. Values are read from the file named by the system property
+ * "edumodule.server.configuration" (default server.properties) and can be overridden with an environment
+ * variable (upper case, dots replaced by underscores) and then with a java system property.
+ */
+public class ServerConfig {
+    private static final Log logger = LogFactory.getLog(ServerConfig.class);
+
+    private static final String DEFAULT_CONFIG = "server.properties";
+    private static final String SERVER_CONFIGURATION = "edumodule.server.configuration";
+
+    private static final String PROPBASE = "edumodule.server.";
+
+    private static final String PORT = PROPBASE + "port";
+    private static final String EPOLL = PROPBASE + "epoll";
+    private static final String ACCEPTORS = PROPBASE + "acceptors";
+    private static final String BOSS_THREADS = PROPBASE + "bossThreads";
+    private static final String WORKER_THREADS = PROPBASE + "workerThreads";
+    private static final String BACKLOG = PROPBASE + "backlog";
+    private static final String WRITE_BUFFER_LOW_WATER_MARK = PROPBASE + "writeBuffer.lowWaterMark";
+    private static final String WRITE_BUFFER_HIGH_WATER_MARK = PROPBASE + "writeBuffer.highWaterMark";
+    private static final String SSL_CERTIFICATE = PROPBASE + "ssl.certificate";
+    private static final String SSL_KEY = PROPBASE + "ssl.key";
+
+    private static final String CHAINCODE_THREADS = PROPBASE + "chaincode.threads";
+    private static final String CHAINCODE_MAX_IN_FLIGHT = PROPBASE + "chaincode.maxInFlight";
+    private static final String CONNECTION_MAX_PENDING = PROPBASE + "connection.maxPending";
+    private static final String CONNECTION_MAX_STREAMS = PROPBASE + "connection.maxStreams";
+    private static final String RESPONSE_DIRECT_BUFFERS = PROPBASE + "response.directBuffers";
+    private static final String CERTIFICATE_CACHE_SIZE = PROPBASE + "certificateCache.maxEntries";
+    private static final String H2C = PROPBASE + "h2c";
+    private static final String BATCH_MAX_SIZE = PROPBASE + "addCertificate.batch.maxSize";
+    private static final String BATCH_MAX_DELAY = PROPBASE + "addCertificate.batch.maxDelayMillis";
+    private static final String COMPRESSION = PROPBASE + "compression";
+    private static final String COMPRESSION_MIN_SIZE = PROPBASE + "compression.minSize";
+    private static final String COMPRESSION_LEVEL = PROPBASE + "compression.level";
+    private static final String DEFAULT_PAGE_SIZE = PROPBASE + "pagination.defaultPageSize";
+    private static final String MAX_PAGE_SIZE = PROPBASE + "pagination.maxPageSize";
+    private static final String ADMISSION = PROPBASE + "admission";
+    private static final String ADMISSION_USER_RATE = PROPBASE + "admission.user.rate";
+    private static final String ADMISSION_USER_BURST = PROPBASE + "admission.user.burst";
+    private static final String ADMISSION_GLOBAL_RATE = PROPBASE + "admission.global.rate";
+    private static final String ADMISSION_GLOBAL_BURST = PROPBASE + "admission.global.burst";
+    private static final String ADMISSION_MAX_USERS = PROPBASE + "admission.maxUsers";
+    private static final String ADMISSION_CLIENT_RATE = PROPBASE + "admission.client.rate";
+    private static final String ADMISSION_CLIENT_BURST = PROPBASE + "admission.client.burst";
+    private static final String EVENT_QUEUE_SIZE = PROPBASE + "events.queueSize";
+    private static final String EVENT_MAX_SUBSCRIBERS = PROPBASE + "events.maxSubscribers";
+    private static final String IDEMPOTENCY_MAX_ENTRIES = PROPBASE + "idempotency.maxEntries";
+    private static final String IDEMPOTENCY_TTL = PROPBASE + "idempotency.ttlSeconds";
+    private static final String TRANSACTION_TABLE_SIZE = PROPBASE + "transactions.maxEntries";
+    private static final String COMMIT_TIMEOUT = PROPBASE + "transactions.commitTimeoutSeconds";
+    private static final String IMAGES_DIRECTORY = PROPBASE + "images.directory";
+    private static final String IMAGES_METADATA_CACHE_SIZE = PROPBASE + "images.metadataCacheSize";
+    private static final String IMAGES_REVALIDATE = PROPBASE + "images.revalidateMillis";
+    private static final String IMAGES_MAX_AGE = PROPBASE + "images.maxAgeSeconds";
+    private static final String CERTIFICATE_VERSIONS_SIZE = PROPBASE + "certificateVersions.maxEntries";
+    private static final String IMPORT_WINDOW = PROPBASE + "import.window";
+    private static final String EXPORT_THREADS = PROPBASE + "export.threads";
+    private static final String SEARCH_SNAPSHOT_FILE = PROPBASE + "search.snapshotFile";
+    private static final String SEARCH_SNAPSHOT_INTERVAL = PROPBASE + "search.snapshotIntervalSeconds";
+    private static final String SEARCH_MAX_RESULTS = PROPBASE + "search.maxResults";
+
+    private final static Properties serverProperties = new Properties();
+    private static ServerConfig config;
+
+    private ServerConfig() {
+        File loadFile = new File(System.getProperty(SERVER_CONFIGURATION, DEFAULT_CONFIG)).getAbsoluteFile();
+        logger.debug(String.format("Loading configuration from %s and it is present: %b", loadFile.toString(),
+                loadFile.exists()));
+        try (InputStream configProps = new FileInputStream(loadFile)) {
+            serverProperties.load(configProps);
+        } catch (IOException e) { // if not there no worries just use defaults
+        } finally {
+
+            // Default values
+
+            defaultProperty(PORT, "8080");
+            defaultProperty(EPOLL, "true");
+            defaultProperty(ACCEPTORS, "1");
+            defaultProperty(BOSS_THREADS, "1");
+            defaultProperty(WORKER_THREADS, "0"); // Netty default: twice the number of cores
+            defaultProperty(BACKLOG, "1024");
+            defaultProperty(WRITE_BUFFER_LOW_WATER_MARK, "32768");
+            defaultProperty(WRITE_BUFFER_HIGH_WATER_MARK, "131072");
+            defaultProperty(SSL_CERTIFICATE, null);
+            defaultProperty(SSL_KEY, null);
+            defaultProperty(CHAINCODE_THREADS, "16");
+            defaultProperty(CHAINCODE_MAX_IN_FLIGHT, "256");
+            defaultProperty(CONNECTION_MAX_PENDING, "16");
+            defaultProperty(CONNECTION_MAX_STREAMS, "100");
+            defaultProperty(RESPONSE_DIRECT_BUFFERS, "true");
+            defaultProperty(CERTIFICATE_CACHE_SIZE, "100000");
+            defaultProperty(H2C, "true");
+            defaultProperty(BATCH_MAX_SIZE, "1");
+            defaultProperty(BATCH_MAX_DELAY, "20");
+            defaultProperty(COMPRESSION, "true");
+            defaultProperty(COMPRESSION_MIN_SIZE, "1024");
+            defaultProperty(COMPRESSION_LEVEL, "6");
+            defaultProperty(DEFAULT_PAGE_SIZE, "100");
+            defaultProperty(MAX_PAGE_SIZE, "1000");
+            defaultProperty(ADMISSION, "true");
+            defaultProperty(ADMISSION_USER_RATE, "5");
+            defaultProperty(ADMISSION_USER_BURST, "20");
+            defaultProperty(ADMISSION_GLOBAL_RATE, "200");
+            defaultProperty(ADMISSION_GLOBAL_BURST, "400");
+            defaultProperty(ADMISSION_MAX_USERS, "100000");
+            defaultProperty(ADMISSION_CLIENT_RATE, "50");
+            defaultProperty(ADMISSION_CLIENT_BURST, "100");
+            defaultProperty(EVENT_QUEUE_SIZE, "64");
+            defaultProperty(EVENT_MAX_SUBSCRIBERS, "10000");
+            defaultProperty(IDEMPOTENCY_MAX_ENTRIES, "100000");
+            defaultProperty(IDEMPOTENCY_TTL, "600");
+            defaultProperty(TRANSACTION_TABLE_SIZE, "100000");
+            defaultProperty(COMMIT_TIMEOUT, "120");
+            defaultProperty(IMAGES_DIRECTORY, "images");
+            defaultProperty(IMAGES_METADATA_CACHE_SIZE, "10000");
+            defaultProperty(IMAGES_REVALIDATE, "2000");
+            defaultProperty(IMAGES_MAX_AGE, "3600");
+            defaultProperty(CERTIFICATE_VERSIONS_SIZE, "100000");
+            defaultProperty(IMPORT_WINDOW, "200");
+            defaultProperty(EXPORT_THREADS, "2");
+            defaultProperty(SEARCH_SNAPSHOT_FILE, "certificate-index.snapshot");
+            defaultProperty(SEARCH_SNAPSHOT_INTERVAL, "300");
+            defaultProperty(SEARCH_MAX_RESULTS, "100");
+        }
+    }
+
+    /**
+     * getConfig return back singleton for server configuration.
+     *
+     * @return Global configuration
+     */
+    public static ServerConfig getConfig() {
+        if (null == config) {
+            config = new ServerConfig();
+        }
+        return config;
+    }
+
+    static private void defaultProperty(String key, String value) {
+
+        String ret = System.getProperty(key);
+        if (ret != null) {
+            serverProperties.put(key, ret);
+        } else {
+            String envKey = key.toUpperCase().replaceAll("\\.", "_");
+            ret = System.getenv(envKey);
+            if (null != ret) {
+                serverProperties.put(key, ret);
+            } else {
+                if (null == serverProperties.getProperty(key) && value != null) {
+                    serverProperties.put(key, value);
+                }
+            }
+        }
+    }
+
+    private String getProperty(String property) {
+
+        String ret = serverProperties.getProperty(property);
+
+        if (null == ret) {
+            logger.warn(String.format("No configuration value found for '%s'", property));
+        }
+        return ret;
+    }
+
+    public int getPort() {
+        return Integer.parseInt(getProperty(PORT));
+    }
+
+    /**
+     * @return whether to use the native epoll transport when it is available
+     */
+    public boolean isEpollEnabled() {
+        return Boolean.parseBoolean(getProperty(EPOLL));
+    }
+
+    /**
+     * @return number of SO_REUSEPORT server channels bound to the port (epoll only)
+     */
+    public int getAcceptors() {
+        return Integer.parseInt(getProperty(ACCEPTORS));
+    }
+
+    public int getBossThreads() {
+        return Integer.parseInt(getProperty(BOSS_THREADS));
+    }
+
+    /**
+     * @return I/O threads serving connections, 0 for the Netty default
+     */
+    public int getWorkerThreads() {
+        return Integer.parseInt(getProperty(WORKER_THREADS));
+    }
+
+    public int getBacklog() {
+        return Integer.parseInt(getProperty(BACKLOG));
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return Integer.parseInt(getProperty(WRITE_BUFFER_LOW_WATER_MARK));
+    }
+
+    /**
+     * @return bytes queued for write on a connection above which it stops reading requests
+     */
+    public int getWriteBufferHighWaterMark() {
+        return Integer.parseInt(getProperty(WRITE_BUFFER_HIGH_WATER_MARK));
+    }
+
+    /**
+     * @return PEM certificate chain file for TLS, or null to serve plaintext
+     */
+    public String getSslCertificate() {
+        return serverProperties.getProperty(SSL_CERTIFICATE);
+    }
+
+    /**
+     * @return PKCS#8 PEM private key file matching the certificate
+     */
+    public String getSslKey() {
+        return serverProperties.getProperty(SSL_KEY);
+    }
+
+    /**
+     * @return number of threads that run blocking chaincode calls off the event loop
+     */
+    public int getChaincodeThreads() {
+        return Integer.parseInt(getProperty(CHAINCODE_THREADS));
+    }
+
+    /**
+     * @return chaincode calls in flight across all connections above which connections stop reading
+     */
+    public int getChaincodeMaxInFlight() {
+        return Integer.parseInt(getProperty(CHAINCODE_MAX_IN_FLIGHT));
+    }
+
+    /**
+     * @return unanswered requests on one connection above which the connection stops reading
+     */
+    public int getConnectionMaxPending() {
+        return Integer.parseInt(getProperty(CONNECTION_MAX_PENDING));
+    }
+
+    /**
+     * @return concurrent streams of one HTTP/2 connection, advertised to the client; unanswered streams above
+     * it stop the connection reading, in place of {@link #getConnectionMaxPending()}
+     */
+    public int getConnectionMaxStreams() {
+        return Integer.parseInt(getProperty(CONNECTION_MAX_STREAMS));
+    }
+
+    /**
+     * @return whether JSON responses are encoded into direct (off-heap) buffers
+     */
+    public boolean isDirectResponseBuffers() {
+        return Boolean.parseBoolean(getProperty(RESPONSE_DIRECT_BUFFERS));
+    }
+
+    /**
+     * @return users whose certificate lists are kept in the response cache
+     */
+    public int getCertificateCacheSize() {
+        return Integer.parseInt(getProperty(CERTIFICATE_CACHE_SIZE));
+    }
+
+    /**
+     * @return whether plaintext HTTP/1.1 connections may upgrade to h2c
+     */
+    public boolean isH2cEnabled() {
+        return Boolean.parseBoolean(getProperty(H2C));
+    }
+
+    /**
+     * @return most add-certificate requests submitted in one transaction; 1, the default, disables batching.
+     * Larger batches need a chaincode with the addCertificates function
+     */
+    public int getAddCertificateBatchMaxSize() {
+        return Integer.parseInt(getProperty(BATCH_MAX_SIZE));
+    }
+
+    /**
+     * @return longest time the first request of a batch waits for others, in milliseconds
+     */
+    public long getAddCertificateBatchMaxDelay() {
+        return Long.parseLong(getProperty(BATCH_MAX_DELAY));
+    }
+
+    /**
+     * @return whether responses are gzip or deflate compressed for clients accepting it
+     */
+    public boolean isCompressionEnabled() {
+        return Boolean.parseBoolean(getProperty(COMPRESSION));
+    }
+
+    /**
+     * @return response body size in bytes below which responses are not compressed
+     */
+    public int getCompressionMinSize() {
+        return Integer.parseInt(getProperty(COMPRESSION_MIN_SIZE));
+    }
+
+    /**
+     * @return deflate compression level, 1 (fastest) to 9 (smallest)
+     */
+    public int getCompressionLevel() {
+        return Integer.parseInt(getProperty(COMPRESSION_LEVEL));
+    }
+
+    /**
+     * @return certificates per page when get-certificates is given a cursor without a page_size
+     */
+    public int getDefaultPageSize() {
+        return Integer.parseInt(getProperty(DEFAULT_PAGE_SIZE));
+    }
+
+    /**
+     * @return largest page_size accepted by get-certificates
+     */
+    public int getMaxPageSize() {
+        return Integer.parseInt(getProperty(MAX_PAGE_SIZE));
+    }
+
+    /**
+     * @return whether add-certificate is rate limited per user and globally
+     */
+    public boolean isAdmissionEnabled() {
+        return Boolean.parseBoolean(getProperty(ADMISSION));
+    }
+
+    /**
+     * @return add-certificate requests per second a single user may sustain
+     */
+    public double getAdmissionUserRate() {
+        return Double.parseDouble(getProperty(ADMISSION_USER_RATE));
+    }
+
+    /**
+     * @return add-certificate requests a single user may send at once
+     */
+    public int getAdmissionUserBurst() {
+        return Integer.parseInt(getProperty(ADMISSION_USER_BURST));
+    }
+
+    /**
+     * @return add-certificate requests per second admitted across all users
+     */
+    public double getAdmissionGlobalRate() {
+        return Double.parseDouble(getProperty(ADMISSION_GLOBAL_RATE));
+    }
+
+    /**
+     * @return add-certificate requests admitted at once across all users
+     */
+    public int getAdmissionGlobalBurst() {
+        return Integer.parseInt(getProperty(ADMISSION_GLOBAL_BURST));
+    }
+
+    /**
+     * @return users, and client addresses, tracked at most; further ones share one bucket
+     */
+    public int getAdmissionMaxUsers() {
+        return Integer.parseInt(getProperty(ADMISSION_MAX_USERS));
+    }
+
+    /**
+     * @return add-certificate requests per second a single client address may sustain, whatever users
+     * it names
+     */
+    public double getAdmissionClientRate() {
+        return Double.parseDouble(getProperty(ADMISSION_CLIENT_RATE));
+    }
+
+    /**
+     * @return add-certificate requests a single client address may send at once
+     */
+    public int getAdmissionClientBurst() {
+        return Integer.parseInt(getProperty(ADMISSION_CLIENT_BURST));
+    }
+
+    /**
+     * @return events queued per event stream before they are coalesced into a resync
+     */
+    public int getEventQueueSize() {
+        return Integer.parseInt(getProperty(EVENT_QUEUE_SIZE));
+    }
+
+    /**
+     * @return open event streams above which new subscriptions are refused
+     */
+    public int getEventMaxSubscribers() {
+        return Integer.parseInt(getProperty(EVENT_MAX_SUBSCRIBERS));
+    }
+
+    /**
+     * @return add-certificate submissions remembered for duplicate suppression
+     */
+    public int getIdempotencyMaxEntries() {
+        return Integer.parseInt(getProperty(IDEMPOTENCY_MAX_ENTRIES));
+    }
+
+    /**
+     * @return seconds a successful add-certificate is answered from memory when repeated
+     */
+    public long getIdempotencyTtl() {
+        return Long.parseLong(getProperty(IDEMPOTENCY_TTL));
+    }
+
+    /**
+     * @return transactions whose state is kept for /tx/{id}
+     */
+    public int getTransactionTableSize() {
+        return Integer.parseInt(getProperty(TRANSACTION_TABLE_SIZE));
+    }
+
+    /**
+     * @return seconds after ordering without a commit event before a transaction is reported timed out
+     */
+    public long getCommitTimeout() {
+        return Long.parseLong(getProperty(COMMIT_TIMEOUT));
+    }
+
+    /**
+     * @return directory the certificate images are served from
+     */
+    public String getImagesDirectory() {
+        return getProperty(IMAGES_DIRECTORY);
+    }
+
+    /**
+     * @return image files whose size and modification time are kept in memory
+     */
+    public int getImagesMetadataCacheSize() {
+        return Integer.parseInt(getProperty(IMAGES_METADATA_CACHE_SIZE));
+    }
+
+    /**
+     * @return milliseconds the kept metadata of an image is used before the file is checked again
+     */
+    public long getImagesRevalidateMillis() {
+        return Long.parseLong(getProperty(IMAGES_REVALIDATE));
+    }
+
+    /**
+     * @return seconds clients may cache an image without revalidating it
+     */
+    public long getImagesMaxAge() {
+        return Long.parseLong(getProperty(IMAGES_MAX_AGE));
+    }
+
+    /**
+     * @return users whose last certificate block is tracked for get-certificates ETags
+     */
+    public int getCertificateVersionsSize() {
+        return Integer.parseInt(getProperty(CERTIFICATE_VERSIONS_SIZE));
+    }
+
+    /**
+     * @return certificates of one bulk import submitted and not yet ordered at a time
+     */
+    public int getImportWindow() {
+        return Integer.parseInt(getProperty(IMPORT_WINDOW));
+    }
+
+    /**
+     * @return number of threads that run the block queries of ledger exports, apart from the chaincode threads
+     */
+    public int getExportThreads() {
+        return Integer.parseInt(getProperty(EXPORT_THREADS));
+    }
+
+    /**
+     * @return file the certificate search index is saved to and loaded from
+     */
+    public String getSearchSnapshotFile() {
+        return getProperty(SEARCH_SNAPSHOT_FILE);
+    }
+
+    /**
+     * @return seconds between snapshots of the certificate search index
+     */
+    public long getSearchSnapshotInterval() {
+        return Long.parseLong(getProperty(SEARCH_SNAPSHOT_INTERVAL));
+    }
+
+    /**
+     * @return most results one certificate search may ask for
+     */
+    public int getSearchMaxResults() {
+        return Integer.parseInt(getProperty(SEARCH_MAX_RESULTS));
+    }
+}
@@ -0,0 +1,65 @@
+package server;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls: while a call for a key is in flight, further calls for the same
+ * key share its result instead of starting their own. Nothing is kept once the call completes; caching
+ * results is left to the caller.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * @param name prefix of the metrics
+     */
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param call started unless a call for the key is in flight
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            shared.increment();
+            return inFlight;
+        }
+        started.increment();
+        try {
+            call.get().whenComplete((value, cause) -> {
+                flights.remove(key, flight);
+                if (cause != null) {
+                    flight.completeExceptionally(cause);
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight;
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register(name + ".started", started::sum);
+        metrics.register(name + ".shared", shared::sum);
+        metrics.register(name + ".coalescingRatio", () -> {
+            long sharedCalls = shared.sum();
+            long calls = started.sum() + sharedCalls;
+            return calls == 0 ? 0d : (double) sharedCalls / calls;
+        });
+    }
+}
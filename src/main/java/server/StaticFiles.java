@@ -0,0 +1,242 @@
+package server;
+
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the certificate images (cert_img) below a directory, e.g. /images/Cert6.png. Answers
+ * If-None-Match and If-Modified-Since with 304, and single byte ranges with 206.
+ * <p>
+ * File metadata is kept in a bounded cache and checked against the file system again after
+ * revalidateMillis, so most requests cost no system call before the body is sent.
+ */
+public class StaticFiles {
+
+    public static final String IMAGES = "/images/*";
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("webp", "image/webp");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+    }
+
+    private final File root;
+    private final String prefix;
+    private final long revalidate;
+    private final long maxAge;
+    private final Map<String, Metadata> metadata;
+
+    /**
+     * @param maxAge seconds clients may use an image without revalidating it
+     */
+    public StaticFiles(File root, String path, final int maxEntries, long revalidateMillis, long maxAge) {
+        this.root = root.getAbsoluteFile();
+        this.prefix = path.substring(0, path.length() - 1);
+        this.revalidate = TimeUnit.MILLISECONDS.toNanos(revalidateMillis);
+        this.maxAge = maxAge;
+        this.metadata = new LinkedHashMap<String, Metadata>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public StaticFiles(ServerConfig config) {
+        this(new File(config.getImagesDirectory()), IMAGES, config.getImagesMetadataCacheSize(),
+                config.getImagesRevalidateMillis(), config.getImagesMaxAge());
+    }
+
+    /**
+     * The route of the images.
+     */
+    public Object serve(RequestContext request) {
+        String name = request.getPath().substring(prefix.length());
+        Metadata file = lookup(name);
+        if (file == null) {
+            return new StatusResponse(HttpResponseStatus.NOT_FOUND, null);
+        }
+
+        HttpHeaders headers = request.getRequest().headers();
+        if (notModified(headers, file)) {
+            return withValidators(new FileResponse(HttpResponseStatus.NOT_MODIFIED, null, 0, 0), file);
+        }
+
+        String range = headers.get(HttpHeaderNames.RANGE);
+        String ifRange = headers.get(HttpHeaderNames.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.equals(file.etag))) {
+            long[] bounds = parseRange(range, file.length);
+            if (bounds == null) {
+                FileResponse response = new FileResponse(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE,
+                        null, 0, 0);
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE, "bytes */" + file.length);
+                return response;
+            }
+            if (bounds.length == 2) {
+                FileResponse response = new FileResponse(HttpResponseStatus.PARTIAL_CONTENT, file.file,
+                        bounds[0], bounds[1] - bounds[0] + 1).expectLength(file.length, () -> forget(name));
+                response.headers().set(HttpHeaderNames.CONTENT_RANGE,
+                        "bytes " + bounds[0] + '-' + bounds[1] + '/' + file.length);
+                return withValidators(response, file);
+            }
+        }
+        return withValidators(new FileResponse(HttpResponseStatus.OK, file.file, 0, file.length)
+                .expectLength(file.length, () -> forget(name)), file);
+    }
+
+    private FileResponse withValidators(FileResponse response, Metadata file) {
+        response.headers()
+                .set(HttpHeaderNames.CONTENT_TYPE, file.contentType)
+                .set(HttpHeaderNames.ETAG, file.etag)
+                .set(HttpHeaderNames.LAST_MODIFIED, DateFormatter.format(new Date(file.lastModified)))
+                .set(HttpHeaderNames.ACCEPT_RANGES, "bytes")
+                .set(HttpHeaderNames.CACHE_CONTROL, "public, max-age=" + maxAge);
+        return response;
+    }
+
+    private static boolean notModified(HttpHeaders headers, Metadata file) {
+        String ifNoneMatch = headers.get(HttpHeaderNames.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.equals("*") || tag.equals(file.etag) || tag.equals("W/" + file.etag)) {
+                    return true;
+                }
+            }
+            // If-Modified-Since is ignored when If-None-Match is present.
+            return false;
+        }
+        String ifModifiedSince = headers.get(HttpHeaderNames.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null) {
+            Date since = DateFormatter.parseHttpDate(ifModifiedSince);
+            // HTTP dates have whole seconds.
+            return since != null && file.lastModified / 1000 <= since.getTime() / 1000;
+        }
+        return false;
+    }
+
+    /**
+     * @return {first, last} of a single satisfiable range, an empty array to ignore the header
+     * (several ranges, not a byte range, or an invalid one such as 5-3), or null if the range is not
+     * satisfiable
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return new long[0];
+        }
+        try {
+            long first;
+            long last;
+            if (dash == 0) {
+                // Suffix range: the last n bytes.
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return null;
+                }
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                if (first < 0 || last < first) {
+                    // Not a valid range, e.g. bytes=5-3, rather than one beyond the end of the file.
+                    return new long[0];
+                }
+                last = Math.min(last, length - 1);
+            }
+            if (first >= length) {
+                return null;
+            }
+            return new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * @return metadata of the regular file below the root, or null if there is none
+     */
+    private Metadata lookup(String name) {
+        if (name.isEmpty() || name.startsWith(".") || name.contains("/.") || name.contains("\\")
+                || name.indexOf('\u0000') != -1) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Metadata cached;
+        synchronized (metadata) {
+            cached = metadata.get(name);
+        }
+        if (cached != null && now - cached.checkedAt < revalidate) {
+            return cached.file == null ? null : cached;
+        }
+
+        File file = new File(root, name);
+        Metadata loaded;
+        if (file.isFile() && file.getAbsolutePath().startsWith(root.getPath() + File.separator)) {
+            long length = file.length();
+            long lastModified = file.lastModified();
+            loaded = new Metadata(file, length, lastModified, contentType(name), now);
+        } else {
+            // Misses are cached too, so probing for missing files costs no system calls either.
+            loaded = new Metadata(null, 0, 0, null, now);
+        }
+        synchronized (metadata) {
+            metadata.put(name, loaded);
+        }
+        return loaded.file == null ? null : loaded;
+    }
+
+    /**
+     * Drop the metadata of a file found to have changed, so it is read again.
+     */
+    private void forget(String name) {
+        synchronized (metadata) {
+            metadata.remove(name);
+        }
+    }
+
+    private static String contentType(String name) {
+        String type = CONTENT_TYPES.get(name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT));
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    private static final class Metadata {
+        final File file;
+        final long length;
+        final long lastModified;
+        final String contentType;
+        final String etag;
+        final long checkedAt;
+
+        Metadata(File file, long length, long lastModified, String contentType, long checkedAt) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            // Changes with any rewrite of the file, as long as its time or length changes.
+            this.etag = '"' + Long.toHexString(lastModified) + '-' + Long.toHexString(length) + '"';
+            this.checkedAt = checkedAt;
+        }
+    }
+}
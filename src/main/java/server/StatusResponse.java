@@ -0,0 +1,42 @@
+package server;
+
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Route result answered with a status other than 200 OK, or with headers of its own.
+ */
+public final class StatusResponse {
+
+    private final HttpResponseStatus status;
+    private final Object body;
+    private final HttpHeaders headers = new DefaultHttpHeaders();
+
+    public StatusResponse(HttpResponseStatus status, Object body) {
+        this.status = status;
+        this.body = body;
+    }
+
+    /**
+     * @return 202 Accepted with the body
+     */
+    public static StatusResponse accepted(Object body) {
+        return new StatusResponse(HttpResponseStatus.ACCEPTED, body);
+    }
+
+    public HttpResponseStatus getStatus() {
+        return status;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    /**
+     * @return headers added to the response
+     */
+    public HttpHeaders headers() {
+        return headers;
+    }
+}
@@ -0,0 +1,57 @@
+package server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpRequest;
+
+/**
+ * Request to a streamed route, dispatched as soon as its head is read and with an empty content. The
+ * route attaches a {@link Body} which the {@link StreamingRequestHandler} then feeds with the content as
+ * it arrives, so the body is never held in memory as a whole.
+ */
+public final class StreamedRequest extends DefaultFullHttpRequest {
+
+    /**
+     * Receiver of a streamed body. Called on the channel's event loop.
+     */
+    public interface Body {
+        /**
+         * @param chunk next part of the body, released once this returns
+         */
+        void content(ByteBuf chunk);
+
+        /**
+         * The whole body was read.
+         */
+        void end();
+
+        /**
+         * @return whether reading should pause until the resume callback is run
+         */
+        boolean isSuspended();
+
+        /**
+         * @param resume callback to run, from any thread, when reading may continue
+         */
+        void resumeReadingWith(Runnable resume);
+    }
+
+    private Body body;
+
+    StreamedRequest(HttpRequest head) {
+        super(head.protocolVersion(), head.method(), head.uri(), Unpooled.buffer(0));
+        headers().set(head.headers());
+    }
+
+    /**
+     * @param body receiver of the content; without one the content is discarded
+     */
+    public void setBody(Body body) {
+        this.body = body;
+    }
+
+    Body getBody() {
+        return body;
+    }
+}
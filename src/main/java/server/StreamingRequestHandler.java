@@ -0,0 +1,111 @@
+package server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+/**
+ * Sits before the HttpObjectAggregator and takes requests to streamed routes out of aggregation: their
+ * head goes on as a {@link StreamedRequest} and their content to the {@link StreamedRequest.Body} the
+ * route attached. While the body is suspended, autoRead is off and reads from the socket are held back,
+ * so a client cannot send faster than the body is consumed. {@link ReadEvent}s tell the handlers
+ * behind, which turn autoRead on and off for their own reasons, not to turn it on meanwhile.
+ * <p>
+ * HTTP/2 requests arrive aggregated from the HTTP/2 adapter and pass through untouched.
+ */
+public class StreamingRequestHandler extends ChannelDuplexHandler {
+
+    /**
+     * User events fired when a body suspends reading, after turning autoRead off, and when it resumes,
+     * after turning autoRead on again.
+     */
+    public enum ReadEvent {
+        SUSPENDED, RESUMED
+    }
+
+    private final RouteTable routes;
+    /** Request whose content is being read, or null */
+    private StreamedRequest streaming;
+    /** autoRead was turned off for a suspended body */
+    private boolean suspended;
+
+    public StreamingRequestHandler(RouteTable routes) {
+        this.routes = routes;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof HttpRequest && !(msg instanceof FullHttpRequest)) {
+            HttpRequest head = (HttpRequest) msg;
+            if (head.decoderResult().isSuccess()
+                    && routes.isStreamed(head.method(), new QueryStringDecoder(head.uri()).path())) {
+                if (HttpUtil.is100ContinueExpected(head)) {
+                    // The aggregator would have answered this.
+                    ctx.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE,
+                            Unpooled.EMPTY_BUFFER));
+                    head.headers().remove(HttpHeaderNames.EXPECT);
+                }
+                StreamedRequest request = new StreamedRequest(head);
+                streaming = request;
+                ctx.fireChannelRead(request);
+                StreamedRequest.Body body = request.getBody();
+                if (body != null) {
+                    body.resumeReadingWith(() -> ctx.executor().execute(() -> resumeRead(ctx)));
+                }
+                return;
+            }
+        }
+        if (streaming != null && msg instanceof HttpContent) {
+            HttpContent content = (HttpContent) msg;
+            StreamedRequest.Body body = streaming.getBody();
+            try {
+                if (body != null) {
+                    body.content(content.content());
+                }
+            } finally {
+                content.release();
+            }
+            if (content instanceof LastHttpContent) {
+                streaming = null;
+                if (body != null) {
+                    body.end();
+                }
+                resumeRead(ctx);
+            } else if (body != null && body.isSuspended() && !suspended) {
+                suspended = true;
+                // Otherwise the transport keeps reading whatever read() does.
+                ctx.channel().config().setAutoRead(false);
+                ctx.fireUserEventTriggered(ReadEvent.SUSPENDED);
+            }
+            return;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) {
+        // Held back from handlers calling read() themselves, e.g. the aggregator without autoRead.
+        if (!suspended) {
+            ctx.read();
+        }
+    }
+
+    private void resumeRead(ChannelHandlerContext ctx) {
+        StreamedRequest.Body body = streaming == null ? null : streaming.getBody();
+        if (suspended && (body == null || !body.isSuspended())) {
+            suspended = false;
+            ctx.channel().config().setAutoRead(true);
+            ctx.fireUserEventTriggered(ReadEvent.RESUMED);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count the bucket keeps the time at which it will be full
+ * again, which a single compare-and-set can advance; taking a token moves that time one refill
+ * interval further, and a token is refused while it would lie more than the burst ahead of now.
+ */
+public class TokenBucket {
+
+    /** Nanoseconds to refill one token */
+    private final long interval;
+    /** Nanoseconds to refill the whole bucket */
+    private final long capacity;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param rate  tokens refilled per second
+     * @param burst tokens the bucket holds
+     */
+    public TokenBucket(double rate, int burst) {
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        this.capacity = interval * burst;
+        // Full already for a caller that read the time just before creating the bucket.
+        this.fullAt = new AtomicLong(System.nanoTime() - capacity);
+    }
+
+    /**
+     * Take one token.
+     *
+     * @return 0 if taken, otherwise nanoseconds until a token is available
+     */
+    public long tryAcquire(long now) {
+        return tryAcquire(now, 1);
+    }
+
+    /**
+     * Take tokens, all or none.
+     *
+     * @return 0 if taken, otherwise nanoseconds until the tokens are available
+     */
+    public long tryAcquire(long now, int tokens) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval * tokens;
+            long ahead = next - now;
+            if (ahead > capacity) {
+                return ahead - capacity;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Give back tokens taken for a request refused elsewhere.
+     */
+    public void release(int tokens) {
+        fullAt.addAndGet(-interval * tokens);
+    }
+
+    /**
+     * @return whether the bucket is full, so it holds no state worth keeping
+     */
+    public boolean isFull(long now) {
+        return fullAt.get() - now <= 0;
+    }
+}
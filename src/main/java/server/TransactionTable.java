@@ -0,0 +1,106 @@
+package server;
+
+import blockchain.TransactionState;
+import data.TransactionStatus;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded table of the latest state of recently submitted transactions, fed by
+ * {@link blockchain.Fabric#submitChaincode} and the chain's transaction events. A transaction still
+ * ORDERED when the commit timeout expires becomes TIMED_OUT; a commit event arriving later still
+ * updates it. The oldest transactions are forgotten first.
+ */
+public class TransactionTable implements TransactionState.Listener {
+
+    private final Map<String, TransactionStatus> transactions;
+    private final Timer timer = new HashedWheelTimer(new DefaultThreadFactory("transaction-timeout", true));
+    private final long commitTimeout;
+    private final Map<TransactionState, LongAdder> counts = new EnumMap<>(TransactionState.class);
+
+    /**
+     * @param commitTimeout milliseconds from ORDERED to TIMED_OUT
+     */
+    public TransactionTable(final int maxEntries, long commitTimeout) {
+        this.commitTimeout = commitTimeout;
+        this.transactions = new LinkedHashMap<String, TransactionStatus>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TransactionStatus> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        for (TransactionState state : TransactionState.values()) {
+            counts.put(state, new LongAdder());
+        }
+    }
+
+    public TransactionTable(ServerConfig config) {
+        this(config.getTransactionTableSize(), TimeUnit.SECONDS.toMillis(config.getCommitTimeout()));
+    }
+
+    @Override
+    public void stateChanged(String transactionId, TransactionState state) {
+        update(transactionId, state, null);
+    }
+
+    private void timeOut(String transactionId) {
+        update(transactionId, TransactionState.TIMED_OUT, TransactionState.ORDERED);
+    }
+
+    /**
+     * @param expected state the transaction must be in for the update, or null for any
+     */
+    private void update(String transactionId, TransactionState state, TransactionState expected) {
+        synchronized (transactions) {
+            TransactionStatus status = transactions.get(transactionId);
+            if (expected != null && (status == null || !expected.name().equals(status.getStatus()))) {
+                return;
+            }
+            if (status == null) {
+                transactions.put(transactionId,
+                        new TransactionStatus(transactionId, state.name(), System.currentTimeMillis()));
+            } else {
+                // Statuses handed out are copies, so this one may be updated in place.
+                status.setStatus(state.name());
+                status.setUpdated(System.currentTimeMillis());
+            }
+        }
+        counts.get(state).increment();
+        if (state == TransactionState.ORDERED) {
+            timer.newTimeout(timeout -> timeOut(transactionId), commitTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return copy of the transaction's latest state, or null if it is unknown or forgotten
+     */
+    public TransactionStatus get(String transactionId) {
+        synchronized (transactions) {
+            TransactionStatus status = transactions.get(transactionId);
+            return status == null ? null
+                    : new TransactionStatus(status.getTransaction_id(), status.getStatus(), status.getUpdated());
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.register("transactions.tracked", () -> {
+            synchronized (transactions) {
+                return transactions.size();
+            }
+        });
+        for (Map.Entry<TransactionState, LongAdder> count : counts.entrySet()) {
+            metrics.register("transactions." + count.getKey().name().toLowerCase(), count.getValue()::sum);
+        }
+    }
+
+    public void shutdown() {
+        timer.stop();
+    }
+}
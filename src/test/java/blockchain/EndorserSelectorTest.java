@@ -0,0 +1,197 @@
+package blockchain;
+
+import org.hyperledger.fabric.protos.common.MspPrincipal;
+import org.hyperledger.fabric.protos.common.Policies;
+import org.hyperledger.fabric.sdk.ChaincodeEndorsementPolicy;
+import org.hyperledger.fabric.sdk.HFClient;
+import org.hyperledger.fabric.sdk.Peer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class EndorserSelectorTest {
+
+    private static final List<String> PRINCIPALS = Arrays.asList("Org1MSP", "Org2MSP", "Org3MSP", null);
+    /** Index of a principal no peer can meet, e.g. an admin */
+    private static final int ADMIN = 3;
+
+    private Peer peer1a;
+    private Peer peer1b;
+    private Peer peer2a;
+    private Peer peer3a;
+    private Map<Peer, String> msps;
+
+    @Before
+    public void setUp() throws Exception {
+        HFClient client = HFClient.createNewInstance();
+        peer1a = client.newPeer("peer0.org1", "grpc://localhost:7051");
+        peer1b = client.newPeer("peer1.org1", "grpc://localhost:7056");
+        peer2a = client.newPeer("peer0.org2", "grpc://localhost:8051");
+        peer3a = client.newPeer("peer0.org3", "grpc://localhost:9051");
+        msps = new HashMap<>();
+        msps.put(peer1a, "Org1MSP");
+        msps.put(peer1b, "Org1MSP");
+        msps.put(peer2a, "Org2MSP");
+        msps.put(peer3a, "Org3MSP");
+    }
+
+    private static Policies.SignaturePolicy signedBy(int principal) {
+        return Policies.SignaturePolicy.newBuilder().setSignedBy(principal).build();
+    }
+
+    private static Policies.SignaturePolicy outOf(int n, Policies.SignaturePolicy... rules) {
+        return Policies.SignaturePolicy.newBuilder().setNOutOf(Policies.SignaturePolicy.NOutOf.newBuilder()
+                .setN(n).addAllPolicies(Arrays.asList(rules))).build();
+    }
+
+    private static Map<String, Integer> needs(Object... mspsAndCounts) {
+        Map<String, Integer> needs = new TreeMap<>();
+        for (int i = 0; i < mspsAndCounts.length; i += 2) {
+            needs.put((String) mspsAndCounts[i], (Integer) mspsAndCounts[i + 1]);
+        }
+        return needs;
+    }
+
+    private EndorserSelector selector(Policies.SignaturePolicy rule) throws Exception {
+        Policies.SignaturePolicyEnvelope.Builder envelope = Policies.SignaturePolicyEnvelope.newBuilder()
+                .setPolicy(rule);
+        for (String msp : PRINCIPALS) {
+            MspPrincipal.MSPRole role = MspPrincipal.MSPRole.newBuilder()
+                    .setMspIdentifier(msp == null ? "Org1MSP" : msp)
+                    .setRole(msp == null ? MspPrincipal.MSPRole.MSPRoleType.ADMIN
+                            : MspPrincipal.MSPRole.MSPRoleType.MEMBER)
+                    .build();
+            envelope.addIdentities(MspPrincipal.MSPPrincipal.newBuilder()
+                    .setPrincipalClassification(MspPrincipal.MSPPrincipal.Classification.ROLE)
+                    .setPrincipal(role.toByteString()));
+        }
+        ChaincodeEndorsementPolicy policy = new ChaincodeEndorsementPolicy();
+        policy.fromBytes(envelope.build().toByteArray());
+        return new EndorserSelector(policy, msps);
+    }
+
+    private Collection<Peer> peers() {
+        return Arrays.asList(peer1a, peer1b, peer2a, peer3a);
+    }
+
+    @Test
+    public void testOneOf() {
+        List<Map<String, Integer>> alternatives = EndorserSelector.alternatives(
+                outOf(1, signedBy(0), signedBy(1), signedBy(2)), PRINCIPALS);
+
+        Assert.assertEquals(Arrays.asList(needs("Org1MSP", 1), needs("Org2MSP", 1), needs("Org3MSP", 1)),
+                alternatives);
+    }
+
+    @Test
+    public void testOneOfSelectsSinglePeerAvoidingSlowOnes() throws Exception {
+        EndorserSelector selector = selector(outOf(1, signedBy(0), signedBy(1)));
+        selector.started(Arrays.asList(peer1a, peer1b));
+        selector.finished(peer1a, 500, false);
+        selector.finished(peer1b, 400, false);
+
+        Collection<Peer> selected = selector.select(peers(), Collections.emptySet());
+
+        Assert.assertEquals(Collections.singletonList(peer2a), selected);
+    }
+
+    @Test
+    public void testTwoOfAcrossMsps() throws Exception {
+        Policies.SignaturePolicy rule = outOf(2, signedBy(0), signedBy(1), signedBy(2));
+
+        List<Map<String, Integer>> alternatives = EndorserSelector.alternatives(rule, PRINCIPALS);
+        Assert.assertEquals(3, alternatives.size());
+        Assert.assertTrue(alternatives.contains(needs("Org1MSP", 1, "Org2MSP", 1)));
+        Assert.assertTrue(alternatives.contains(needs("Org1MSP", 1, "Org3MSP", 1)));
+        Assert.assertTrue(alternatives.contains(needs("Org2MSP", 1, "Org3MSP", 1)));
+
+        Collection<Peer> selected = selector(rule).select(peers(), Collections.emptySet());
+        Assert.assertEquals(2, selected.size());
+        Assert.assertEquals("one peer per MSP", 2, new HashSet<>(mspsOf(selected)).size());
+    }
+
+    @Test
+    public void testTwoOfSameMspNeedsTwoPeers() throws Exception {
+        Policies.SignaturePolicy rule = outOf(2, signedBy(0), signedBy(0));
+
+        Assert.assertEquals(Collections.singletonList(needs("Org1MSP", 2)),
+                EndorserSelector.alternatives(rule, PRINCIPALS));
+
+        EndorserSelector selector = selector(rule);
+        Assert.assertEquals(new HashSet<>(Arrays.asList(peer1a, peer1b)),
+                new HashSet<>(selector.select(peers(), Collections.emptySet())));
+        // With one Org1 peer excluded nothing satisfies the policy.
+        Assert.assertEquals(Arrays.asList(peer1a, peer2a, peer3a),
+                selector.select(peers(), Collections.singleton(peer1b)));
+    }
+
+    @Test
+    public void testNestedOutOf() throws Exception {
+        // Org1 and one of Org2 or Org3.
+        Policies.SignaturePolicy rule = outOf(2, signedBy(0), outOf(1, signedBy(1), signedBy(2)));
+
+        List<Map<String, Integer>> alternatives = EndorserSelector.alternatives(rule, PRINCIPALS);
+        Assert.assertEquals(2, alternatives.size());
+        Assert.assertTrue(alternatives.contains(needs("Org1MSP", 1, "Org2MSP", 1)));
+        Assert.assertTrue(alternatives.contains(needs("Org1MSP", 1, "Org3MSP", 1)));
+
+        EndorserSelector selector = selector(rule);
+        Collection<Peer> selected = selector.select(peers(), Collections.singleton(peer2a));
+        Assert.assertEquals(2, selected.size());
+        Assert.assertTrue(selected.contains(peer3a));
+        Assert.assertEquals("Org1MSP", msps.get(selected.iterator().next()));
+    }
+
+    @Test
+    public void testNestedAlternativesAreMinimal() {
+        // Org1 or (Org1 and Org2): Org1 alone is enough.
+        Policies.SignaturePolicy rule = outOf(1, signedBy(0), outOf(2, signedBy(0), signedBy(1)));
+
+        Assert.assertEquals(Collections.singletonList(needs("Org1MSP", 1)),
+                EndorserSelector.alternatives(rule, PRINCIPALS));
+    }
+
+    @Test
+    public void testUnsatisfiableFallsBackToAllPeers() throws Exception {
+        // Needs an admin signature, which no peer gives.
+        Policies.SignaturePolicy rule = outOf(2, signedBy(0), signedBy(ADMIN));
+        Assert.assertTrue(EndorserSelector.alternatives(rule, PRINCIPALS).isEmpty());
+
+        EndorserSelector selector = selector(rule);
+        Assert.assertEquals(peers(), selector.select(peers(), Collections.emptySet()));
+        Assert.assertEquals(Arrays.asList(peer1a, peer2a, peer3a),
+                selector.select(peers(), Collections.singleton(peer1b)));
+    }
+
+    @Test
+    public void testMspWithoutPeersFallsBackToAllPeers() throws Exception {
+        EndorserSelector selector = selector(outOf(2, signedBy(0), signedBy(2)));
+
+        Collection<Peer> selected = selector.select(Arrays.asList(peer1a, peer2a), Collections.emptySet());
+
+        Assert.assertEquals(Arrays.asList(peer1a, peer2a), selected);
+    }
+
+    @Test
+    public void testOutOfPrincipalRangeIsUnsatisfiable() {
+        Assert.assertTrue(EndorserSelector.alternatives(signedBy(PRINCIPALS.size()), PRINCIPALS).isEmpty());
+    }
+
+    private List<String> mspsOf(Collection<Peer> peers) {
+        String[] ids = new String[peers.size()];
+        int i = 0;
+        for (Peer peer : peers) {
+            ids[i++] = msps.get(peer);
+        }
+        return Arrays.asList(ids);
+    }
+}
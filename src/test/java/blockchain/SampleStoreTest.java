@@ -0,0 +1,189 @@
+package blockchain;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+public class SampleStoreTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("samplestore", ".properties");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    private Properties readWithProperties() throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    @Test
+    public void testValuesSurviveReopen() throws Exception {
+        SampleStore store = new SampleStore(file);
+        store.setValue("user.admin", "first");
+        store.setValue("user.peer", "other");
+        store.setValue("user.admin", "second");
+
+        SampleStore reopened = new SampleStore(file);
+        Assert.assertEquals("second", reopened.getValue("user.admin"));
+        Assert.assertEquals("other", reopened.getValue("user.peer"));
+        Assert.assertNull(reopened.getValue("user.none"));
+        // Still a properties file, later entries winning.
+        Assert.assertEquals("second", readWithProperties().getProperty("user.admin"));
+    }
+
+    @Test
+    public void testPartialLastEntryDropped() throws Exception {
+        SampleStore store = new SampleStore(file);
+        store.setValue("a", "1");
+        store.setValue("b", "2");
+        // A crash in the middle of appending an entry.
+        Files.write(file.toPath(), "c=partial val".getBytes(ISO_8859_1), StandardOpenOption.APPEND);
+
+        SampleStore reopened = new SampleStore(file);
+        Assert.assertEquals("1", reopened.getValue("a"));
+        Assert.assertEquals("2", reopened.getValue("b"));
+        Assert.assertNull(reopened.getValue("c"));
+
+        // The next entry starts on a line of its own rather than continuing the partial one.
+        reopened.setValue("d", "4");
+        SampleStore again = new SampleStore(file);
+        Assert.assertEquals("4", again.getValue("d"));
+        Assert.assertNull(again.getValue("c"));
+        Assert.assertNull(readWithProperties().getProperty("c"));
+    }
+
+    @Test
+    public void testPartialEscapedEntryDropped() throws Exception {
+        SampleStore store = new SampleStore(file);
+        store.setValue("a", "1");
+        // Cut inside a value continued over several lines: the tail after the last newline goes.
+        Files.write(file.toPath(), "b=line\\\n  more\\".getBytes(ISO_8859_1), StandardOpenOption.APPEND);
+
+        SampleStore reopened = new SampleStore(file);
+        Assert.assertEquals("1", reopened.getValue("a"));
+        Assert.assertEquals("line", reopened.getValue("b"));
+    }
+
+    @Test
+    public void testLegacyPropertiesFileReadsUnchanged() throws Exception {
+        Properties legacy = new Properties();
+        legacy.setProperty("user.admin", "-----BEGIN CERTIFICATE-----\nMIIB\n-----END CERTIFICATE-----\n");
+        legacy.setProperty("key with spaces", "a=b:c # not a comment");
+        legacy.setProperty("unicode", "\u0414\u0438\u043f\u043b\u043e\u043c \u00e9\u4e2d");
+        legacy.setProperty("backslash", "C:\\path\\to");
+        legacy.setProperty("empty", "");
+        try (OutputStream out = new FileOutputStream(file)) {
+            legacy.store(out, "written by an earlier version");
+        }
+
+        SampleStore store = new SampleStore(file);
+        for (String name : legacy.stringPropertyNames()) {
+            Assert.assertEquals(name, legacy.getProperty(name), store.getValue(name));
+        }
+
+        store.setValue("unicode", "changed");
+        store.setValue("added", "new");
+        SampleStore reopened = new SampleStore(file);
+        Assert.assertEquals("changed", reopened.getValue("unicode"));
+        Assert.assertEquals("new", reopened.getValue("added"));
+        Assert.assertEquals(legacy.getProperty("user.admin"), reopened.getValue("user.admin"));
+        Assert.assertEquals(legacy.getProperty("key with spaces"), reopened.getValue("key with spaces"));
+        Assert.assertEquals("changed", readWithProperties().getProperty("unicode"));
+    }
+
+    @Test
+    public void testConcurrentSetValueAcrossCompaction() throws Exception {
+        final SampleStore store = new SampleStore(file);
+        final int threads = 8;
+        final int keys = 20;
+        final int rounds = 40;
+        final String padding = new String(new char[100]).replace('\0', 'x');
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int round = 0; round < rounds; round++) {
+                        for (int key = 0; key < keys; key++) {
+                            store.setValue("k" + thread + "." + key, round + padding);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        // Compactions besides those the writers start, so some surely fall between their writes.
+        Thread compactor = new Thread(() -> {
+            try {
+                start.await();
+                while (writing.get()) {
+                    store.compact();
+                    Thread.sleep(5);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        compactor.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        compactor.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        String last = (rounds - 1) + padding;
+        SampleStore reopened = new SampleStore(file);
+        Properties onDisk = readWithProperties();
+        for (int t = 0; t < threads; t++) {
+            for (int key = 0; key < keys; key++) {
+                Assert.assertEquals(last, store.getValue("k" + t + "." + key));
+                Assert.assertEquals(last, reopened.getValue("k" + t + "." + key));
+                Assert.assertEquals(last, onDisk.getProperty("k" + t + "." + key));
+            }
+        }
+        long written = (long) threads * keys * rounds * (padding.length() + 8);
+        Assert.assertTrue("compacted", file.length() < written / 2);
+    }
+}
@@ -0,0 +1,133 @@
+package server;
+
+import data.AddCertificate;
+import data.CertificatesProto;
+import data.GetCertificates;
+import data.TransactionStatus;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the hand-written encoding against the classes protoc generates from certificates.proto.
+ */
+public class ProtobufCodecTest {
+
+    private final ProtobufCodec codec = new ProtobufCodec(false);
+
+    private byte[] encode(Object value) {
+        ByteBuf buf = codec.encode(UnpooledByteBufAllocator.DEFAULT, value);
+        try {
+            return ByteBufUtil.getBytes(buf);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testGetCertificatesParsedByGenerated() throws Exception {
+        GetCertificates value = new GetCertificates();
+        value.getCertificates().add(new GetCertificates.CertificateItem("Cert6.png", "\u0414\u0438\u043f\u043b\u043e\u043c"));
+        value.getCertificates().add(new GetCertificates.CertificateItem("", "no image"));
+        for (int i = 0; i < 300; i++) {
+            value.getCertificates().add(new GetCertificates.CertificateItem("Cert" + i + ".png", "title " + i));
+        }
+        value.setNext_cursor("cursor\u0000next");
+
+        CertificatesProto.GetCertificates parsed = CertificatesProto.GetCertificates.parseFrom(encode(value));
+
+        Assert.assertEquals(value.getCertificates().size(), parsed.getCertificatesCount());
+        for (int i = 0; i < value.getCertificates().size(); i++) {
+            Assert.assertEquals(value.getCertificates().get(i).getCert_img(), parsed.getCertificates(i).getCertImg());
+            Assert.assertEquals(value.getCertificates().get(i).getCert_title(),
+                    parsed.getCertificates(i).getCertTitle());
+        }
+        Assert.assertEquals("cursor\u0000next", parsed.getNextCursor());
+    }
+
+    @Test
+    public void testGetCertificatesEncodedByGenerated() {
+        CertificatesProto.GetCertificates message = CertificatesProto.GetCertificates.newBuilder()
+                .addCertificates(CertificatesProto.CertificateItem.newBuilder()
+                        .setCertImg("Cert6.png").setCertTitle("\u0414\u0438\u043f\u043b\u043e\u043c"))
+                .addCertificates(CertificatesProto.CertificateItem.newBuilder().setCertTitle("no image"))
+                .setNextCursor("next")
+                .build();
+
+        GetCertificates decoded = ProtobufCodec.decode(Unpooled.wrappedBuffer(message.toByteArray()),
+                GetCertificates.class);
+
+        Assert.assertEquals(2, decoded.getCertificates().size());
+        Assert.assertEquals("Cert6.png", decoded.getCertificates().get(0).getCert_img());
+        Assert.assertEquals("\u0414\u0438\u043f\u043b\u043e\u043c", decoded.getCertificates().get(0).getCert_title());
+        // proto3 does not send empty strings.
+        Assert.assertNull(decoded.getCertificates().get(1).getCert_img());
+        Assert.assertEquals("no image", decoded.getCertificates().get(1).getCert_title());
+        Assert.assertEquals("next", decoded.getNext_cursor());
+    }
+
+    @Test
+    public void testEmptyGetCertificates() throws Exception {
+        byte[] encoded = encode(new GetCertificates());
+
+        Assert.assertEquals(0, encoded.length);
+        Assert.assertEquals(CertificatesProto.GetCertificates.getDefaultInstance(),
+                CertificatesProto.GetCertificates.parseFrom(encoded));
+    }
+
+    @Test
+    public void testAddCertificateRoundTrip() throws Exception {
+        AddCertificate value = new AddCertificate();
+        value.setUser_id("user1");
+        value.setCertificate_id("cert-42");
+
+        CertificatesProto.AddCertificate parsed = CertificatesProto.AddCertificate.parseFrom(encode(value));
+        Assert.assertEquals("user1", parsed.getUserId());
+        Assert.assertEquals("cert-42", parsed.getCertificateId());
+
+        AddCertificate decoded = ProtobufCodec.decode(Unpooled.wrappedBuffer(parsed.toByteArray()),
+                AddCertificate.class);
+        Assert.assertEquals("user1", decoded.getUser_id());
+        Assert.assertEquals("cert-42", decoded.getCertificate_id());
+    }
+
+    @Test
+    public void testTransactionStatusRoundTrip() throws Exception {
+        TransactionStatus value = new TransactionStatus("a1b2", "COMMITTED", 1496000000000L);
+
+        CertificatesProto.TransactionStatus parsed = CertificatesProto.TransactionStatus.parseFrom(encode(value));
+        Assert.assertEquals("a1b2", parsed.getTransactionId());
+        Assert.assertEquals("COMMITTED", parsed.getStatus());
+        Assert.assertEquals(1496000000000L, parsed.getUpdated());
+
+        CertificatesProto.TransactionStatus negative = parsed.toBuilder().setUpdated(-1).build();
+        TransactionStatus decoded = ProtobufCodec.decode(Unpooled.wrappedBuffer(negative.toByteArray()),
+                TransactionStatus.class);
+        Assert.assertEquals("a1b2", decoded.getTransaction_id());
+        Assert.assertEquals("COMMITTED", decoded.getStatus());
+        Assert.assertEquals(-1, decoded.getUpdated());
+    }
+
+    @Test
+    public void testUnknownFieldsSkipped() {
+        // As a later version could send it: an AddCertificate with a varint field 3.
+        byte[] later = CertificatesProto.AddCertificate.newBuilder().setUserId("user1").build().toByteString()
+                .concat(CertificatesProto.TransactionStatus.newBuilder().setUpdated(7).build().toByteString())
+                .toByteArray();
+
+        AddCertificate decoded = ProtobufCodec.decode(Unpooled.wrappedBuffer(later), AddCertificate.class);
+
+        Assert.assertEquals("user1", decoded.getUser_id());
+        Assert.assertNull(decoded.getCertificate_id());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedBodyRejected() {
+        byte[] encoded = CertificatesProto.AddCertificate.newBuilder().setUserId("user1").build().toByteArray();
+
+        ProtobufCodec.decode(Unpooled.wrappedBuffer(encoded, 0, encoded.length - 1), AddCertificate.class);
+    }
+}
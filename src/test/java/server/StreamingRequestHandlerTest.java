@@ -0,0 +1,143 @@
+package server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public class StreamingRequestHandlerTest {
+
+    private static final int WINDOW = 4;
+
+    /** Submissions not yet ordered */
+    private final ArrayDeque<CompletableFuture<String>> submitted = new ArrayDeque<>();
+    private final List<Object> events = new ArrayList<>();
+    private int reads;
+    private BulkImport bulk;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        RouteTable routes = new RouteTable().postStreamed("/import", request -> null);
+        bulk = new BulkImport(true, WINDOW, certificate -> {
+            CompletableFuture<String> transaction = new CompletableFuture<>();
+            submitted.add(transaction);
+            return transaction;
+        }, new JsonCodec(false));
+        channel = new EmbeddedChannel(
+                new ChannelOutboundHandlerAdapter() {
+                    @Override
+                    public void read(ChannelHandlerContext ctx) throws Exception {
+                        // Reads that reach the transport.
+                        reads++;
+                        super.read(ctx);
+                    }
+                },
+                new StreamingRequestHandler(routes),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ((StreamedRequest) msg).setBody(bulk);
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        events.add(evt);
+                    }
+                });
+        channel.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/import"));
+    }
+
+    private void writeRecord(int i) {
+        channel.writeInbound(new DefaultHttpContent(Unpooled.copiedBuffer("user" + i + ",cert" + i + "\n", UTF_8)));
+    }
+
+    /**
+     * Order the transactions submitted so far, not those their completion submits.
+     */
+    private void order() {
+        for (int n = submitted.size(); n > 0; n--) {
+            submitted.poll().complete("tx");
+        }
+        channel.runPendingTasks();
+    }
+
+    @Test
+    public void testReadingStopsWhileWindowIsFull() {
+        for (int i = 0; i < WINDOW * 2 - 1; i++) {
+            writeRecord(i);
+        }
+        Assert.assertTrue(channel.config().isAutoRead());
+        Assert.assertTrue(events.isEmpty());
+
+        // WINDOW records in flight, WINDOW waiting.
+        writeRecord(WINDOW * 2);
+        Assert.assertFalse(channel.config().isAutoRead());
+        Assert.assertEquals(WINDOW, submitted.size());
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(StreamingRequestHandler.ReadEvent.SUSPENDED, events.get(0));
+
+        int before = reads;
+        channel.read();
+        Assert.assertEquals("read() is held back while suspended", before, reads);
+
+        // Content already read on is taken without suspending again.
+        writeRecord(WINDOW * 2 + 1);
+        Assert.assertEquals(1, events.size());
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        order();
+        Assert.assertTrue(channel.config().isAutoRead());
+        Assert.assertEquals(StreamingRequestHandler.ReadEvent.RESUMED, events.get(events.size() - 1));
+        Assert.assertTrue("resuming reads again", reads > before);
+    }
+
+    @Test
+    public void testEndOfBodyResumes() {
+        for (int i = 0; i < WINDOW * 2; i++) {
+            writeRecord(i);
+        }
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        channel.writeInbound(new DefaultLastHttpContent());
+
+        Assert.assertTrue(channel.config().isAutoRead());
+        Assert.assertEquals(StreamingRequestHandler.ReadEvent.RESUMED, events.get(events.size() - 1));
+        order();
+        order();
+        order();
+        Assert.assertTrue(submitted.isEmpty());
+    }
+
+    @Test
+    public void testStaysSuspendedWhileWindowIsFull() {
+        for (int i = 0; i < WINDOW * 3; i++) {
+            writeRecord(i);
+        }
+        Assert.assertFalse(channel.config().isAutoRead());
+
+        // Ordering the first window submits the second, and the rest still fills the window.
+        order();
+        Assert.assertFalse(channel.config().isAutoRead());
+        Assert.assertEquals(1, events.size());
+
+        order();
+        Assert.assertTrue(channel.config().isAutoRead());
+    }
+}